@@ -0,0 +1,41 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.api.request.UserRequest;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * Тестовые данные, общие для бенчмарков.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static UserRepresentation user(String id) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername("gleb");
+        user.setEmail("test@mail.ru");
+        user.setFirstName("Gleb");
+        user.setLastName("Emelyanov");
+        return user;
+    }
+
+    static RoleRepresentation role(String name) {
+        RoleRepresentation role = new RoleRepresentation();
+        role.setName(name);
+        return role;
+    }
+
+    static GroupRepresentation group(String name) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setName(name);
+        return group;
+    }
+
+    static UserRequest userRequest() {
+        return new UserRequest("gleb", "test@mail.ru", "gleb", "Gleb", "Emelyanov");
+    }
+}
@@ -0,0 +1,82 @@
+package com.itm.space.backendbenchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Сериализация и десериализация {@link UserRequest} и {@link UserResponse} через Jackson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonBenchmark {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .modulesToInstall(new ParameterNamesModule()) //как в приложении: DTO без конструктора по умолчанию
+            .build();
+    private ObjectReader userRequestReader;
+    private ObjectWriter userRequestWriter;
+    private ObjectReader userResponseReader;
+    private ObjectWriter userResponseWriter;
+    private UserRequest userRequest;
+    private UserResponse userResponse;
+    private byte[] userRequestJson;
+    private byte[] userResponseJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        userRequestReader = objectMapper.readerFor(UserRequest.class);
+        userRequestWriter = objectMapper.writerFor(UserRequest.class);
+        userResponseReader = objectMapper.readerFor(UserResponse.class);
+        userResponseWriter = objectMapper.writerFor(UserResponse.class);
+        userRequest = Fixtures.userRequest();
+        userResponse = new UserResponse("Gleb", "Emelyanov", "test@mail.ru",
+                IntStream.range(0, 10).mapToObj(i -> "ROLE" + i).toList(),
+                List.of("Moderators"));
+        userRequestJson = userRequestWriter.writeValueAsBytes(userRequest);
+        userResponseJson = userResponseWriter.writeValueAsBytes(userResponse);
+    }
+
+    @Benchmark
+    public byte[] writeUserRequest() throws IOException {
+        return userRequestWriter.writeValueAsBytes(userRequest);
+    }
+
+    @Benchmark
+    public UserRequest readUserRequest() throws IOException {
+        return userRequestReader.readValue(userRequestJson);
+    }
+
+    @Benchmark
+    public byte[] writeUserResponse() throws IOException {
+        return userResponseWriter.writeValueAsBytes(userResponse);
+    }
+
+    @Benchmark
+    public UserResponse readUserResponse() throws IOException {
+        return userResponseReader.readValue(userResponseJson);
+    }
+}
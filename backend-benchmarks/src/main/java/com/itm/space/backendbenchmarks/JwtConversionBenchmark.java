@@ -0,0 +1,82 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.configuration.KeycloakJwtAuthenticationConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Преобразование JWT в аутентификацию: прежняя реализация из SecurityConfiguration против
+ * {@link KeycloakJwtAuthenticationConverter}. Разницу в аллокациях показывает запуск с {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtConversionBenchmark {
+
+    @Param({"1", "10"})
+    private int roleCount;
+
+    private KeycloakJwtAuthenticationConverter converter;
+    private Jwt jwt;
+
+    @Setup
+    public void setUp() {
+        converter = new KeycloakJwtAuthenticationConverter(10_000, Duration.ofHours(1));
+        List<String> roles = IntStream.range(0, roleCount).mapToObj(i -> "ROLE" + i).toList();
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .jti("3d40251d-829c-454e-b389-ec5e9c38a4cc")
+                .subject("gleb")
+                .expiresAt(Instant.now().plus(Duration.ofHours(1)))
+                .claim("realm_access", Map.of("roles", roles))
+                .build();
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken cachedConverter() {
+        return converter.convert(jwt);
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken legacyConverter() {
+        return legacyConvert(jwt);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JwtAuthenticationToken legacyConvert(Jwt jwt) { //копия прежнего SecurityConfiguration.convertJwtToken
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        JwtAuthenticationToken authenticationToken = new JwtAuthenticationToken(jwt, authorities);
+        Map<String, Object> realmAccess = jwt.getClaimAsMap("realm_access");
+        List<String> roles = (List<String>) realmAccess.get("roles");
+        for (String role : roles) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + role));
+        }
+        return new JwtAuthenticationToken(jwt, authorities, authenticationToken.getName());
+    }
+}
@@ -0,0 +1,109 @@
+package com.itm.space.backendbenchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.itm.space.backendresources.api.response.UserResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Списки {@link UserResponse} в JSON, Smile и CBOR: запись, чтение и перекодирование в JSON, как делает шлюз.
+ * Размеры тела (как есть и после gzip) печатаются в {@code @Setup}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"1", "100"})
+    private int users;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private ObjectReader reader;
+    private ObjectWriter writer;
+    private JsonFactory factory;
+    private List<UserResponse> payload;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        factory = switch (format) {
+            case "smile" -> new SmileFactory();
+            case "cbor" -> new CBORFactory();
+            default -> new JsonFactory();
+        };
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .factory(factory)
+                .modulesToInstall(new ParameterNamesModule()) //как в приложении: DTO без конструктора по умолчанию
+                .build();
+        reader = objectMapper.readerForListOf(UserResponse.class);
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, UserResponse.class));
+        payload = IntStream.range(0, users)
+                .mapToObj(i -> new UserResponse("Gleb" + i, "Emelyanov", "user" + i + "@mail.ru",
+                        List.of("default-roles-itm", "offline_access", "uma_authorization", "MODERATOR"),
+                        List.of("Moderators")))
+                .toList();
+        body = writer.writeValueAsBytes(payload);
+        System.out.printf("%n%s, %d users: %d bytes, %d bytes gzip%n", format, users, body.length, gzip(body).length);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        return writer.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public List<UserResponse> read() throws IOException {
+        return reader.readValue(body);
+    }
+
+    @Benchmark
+    public byte[] transcodeToJson() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 2);
+        try (JsonParser parser = factory.createParser(body);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
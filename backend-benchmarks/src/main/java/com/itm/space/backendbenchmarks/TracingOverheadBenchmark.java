@@ -0,0 +1,106 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.service.KeycloakCallTemplate;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цена трассировки на один вызов Кейклока через {@link KeycloakCallTemplate} (заглушка вместо Кейклока):
+ * off - трассировка выключена, unsampled - спан запроса не попал в выборку, sampled - спан создается и выгружается.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TracingOverheadBenchmark {
+
+    @Param({"off", "unsampled", "sampled"})
+    private String tracing;
+
+    private final UserRepresentation user = new UserRepresentation();
+    private KeycloakCallTemplate keycloakCalls;
+    private SdkTracerProvider tracerProvider;
+    private Span requestSpan;
+    private Tracer.SpanInScope requestScope;
+
+    @Setup
+    public void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory(); //как в приложении: трейсер из контекста, если есть
+        keycloakCalls = new KeycloakCallTemplate(new SimpleMeterRegistry(), CircuitBreaker.ofDefaults("keycloak"),
+                Bulkhead.ofDefaults("keycloak"), Retry.ofDefaults("keycloak"), beanFactory.getBeanProvider(Tracer.class));
+        if (tracing.equals("off")) {
+            return;
+        }
+        tracerProvider = SdkTracerProvider.builder()
+                .setSampler(Sampler.parentBased(tracing.equals("sampled") ? Sampler.alwaysOn() : Sampler.alwaysOff()))
+                .addSpanProcessor(BatchSpanProcessor.builder(new DiscardingSpanExporter()).build())
+                .build();
+        Tracer tracer = new OtelTracer(tracerProvider.get("benchmark"), new OtelCurrentTraceContext(), event -> {
+        });
+        beanFactory.registerSingleton("tracer", tracer);
+        requestSpan = tracer.nextSpan().name("http get /api/users/{id}").start(); //как спан запроса от Spring Boot
+        requestScope = tracer.withSpan(requestSpan);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tracerProvider != null) {
+            requestScope.close();
+            requestSpan.end();
+            tracerProvider.close();
+        }
+    }
+
+    @Benchmark
+    public UserRepresentation keycloakCall() {
+        return keycloakCalls.execute("toRepresentation", () -> user);
+    }
+
+    private static class DiscardingSpanExporter implements SpanExporter {
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.controller.RestExceptionHandler;
+import com.itm.space.backendresources.controller.UserController;
+import com.itm.space.backendresources.mapper.UserMapperImpl;
+import com.itm.space.backendresources.service.KeycloakCallTemplate;
+import com.itm.space.backendresources.service.UserIndex;
+import com.itm.space.backendresources.service.UserServiceImpl;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.MappingsRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * GET /api/users/{id} через {@link UserController} и {@link UserServiceImpl} с заглушкой Кейклока:
+ * маршрутизация MVC, параллельные вызовы клиента, маппинг и сериализация ответа. Без сети и без кэша.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserControllerBenchmark {
+    private static final String USER_ID = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+
+    private ThreadPoolTaskExecutor keycloakExecutor;
+    private LocalValidatorFactoryBean validator;
+    private MockMvc mvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keycloakExecutor = new ThreadPoolTaskExecutor();
+        keycloakExecutor.setCorePoolSize(16);
+        keycloakExecutor.setQueueCapacity(256);
+        keycloakExecutor.initialize();
+        validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+
+        ObjectProvider<Tracer> noTracer = new DefaultListableBeanFactory().getBeanProvider(Tracer.class);
+        KeycloakCallTemplate keycloakCalls = new KeycloakCallTemplate(new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("keycloak"), Bulkhead.ofDefaults("keycloak"), Retry.ofDefaults("keycloak"), noTracer);
+        UserServiceImpl userService = new UserServiceImpl(stubKeycloak(), keycloakCalls, new UserMapperImpl(),
+                keycloakExecutor, new NoOpCacheManager(), validator,
+                new UserIndex(null, keycloakCalls, new SimpleMeterRegistry()), noTracer); //индекс выключен: замеряем вызовы Кейклока
+        ReflectionTestUtils.setField(userService, "realm", "ITM");
+        ReflectionTestUtils.setField(userService, "callTimeout", Duration.ofSeconds(5));
+        mvc = MockMvcBuilders.standaloneSetup(new UserController(userService, null, null, null))
+                .setControllerAdvice(new RestExceptionHandler())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        keycloakExecutor.shutdown();
+        validator.close();
+    }
+
+    @Benchmark
+    public String getUserById() throws Exception {
+        return mvc.perform(get("/api/users/{id}", USER_ID)).andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String getUserByIdProfileOnly() throws Exception { //без вызовов ролей и групп
+        return mvc.perform(get("/api/users/{id}", USER_ID).param("fields", "firstName,lastName,email"))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private static Keycloak stubKeycloak() {
+        Keycloak keycloak = stub(Keycloak.class);
+        RealmResource realmResource = stub(RealmResource.class);
+        UsersResource usersResource = stub(UsersResource.class);
+        UserResource userResource = stub(UserResource.class);
+        RoleMappingResource roleMappingResource = stub(RoleMappingResource.class);
+        MappingsRepresentation mappings = new MappingsRepresentation();
+        mappings.setRealmMappings(IntStream.range(0, 5).mapToObj(i -> Fixtures.role("ROLE" + i)).toList());
+
+        when(keycloak.realm(anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(anyString())).thenReturn(userResource);
+        when(userResource.toRepresentation()).thenReturn(Fixtures.user(USER_ID));
+        when(userResource.roles()).thenReturn(roleMappingResource);
+        when(roleMappingResource.getAll()).thenReturn(mappings);
+        when(userResource.groups()).thenReturn(List.of(Fixtures.group("Moderators")));
+        return keycloak;
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly()); //без записи вызовов, иначе мок копит их и тормозит
+    }
+}
@@ -0,0 +1,58 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.mapper.UserMapper;
+import com.itm.space.backendresources.mapper.UserMapperImpl;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * {@link UserMapper#userRepresentationToUserResponse} при разном числе ролей и групп.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMapperBenchmark {
+
+    @Param({"0", "10", "100"})
+    private int roleCount;
+
+    @Param({"0", "10", "100"})
+    private int groupCount;
+
+    private final UserMapper userMapper = new UserMapperImpl();
+    private UserRepresentation user;
+    private List<RoleRepresentation> roles;
+    private List<GroupRepresentation> groups;
+
+    @Setup
+    public void setUp() {
+        user = Fixtures.user("3d40251d-829c-454e-b389-ec5e9c38a4cc");
+        roles = IntStream.range(0, roleCount).mapToObj(i -> Fixtures.role("ROLE_" + i)).toList();
+        groups = IntStream.range(0, groupCount).mapToObj(i -> Fixtures.group("Group " + i)).toList();
+    }
+
+    @Benchmark
+    public UserResponse map() {
+        return userMapper.userRepresentationToUserResponse(user, roles, groups);
+    }
+}
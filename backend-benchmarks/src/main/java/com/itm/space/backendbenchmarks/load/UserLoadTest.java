@@ -0,0 +1,217 @@
+package com.itm.space.backendbenchmarks.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный сценарий для эндпоинтов /api/users в backend-resources.
+ * Держит заданное число параллельных клиентов в течение заданного времени и печатает пропускную способность
+ * и перцентили задержки по каждой операции. Токен и id существующих пользователей берутся у Кейклока
+ * ({@code --token-url}, {@code --users-url}), например у KeycloakStubServer.
+ * <pre>
+ * java -cp backend-benchmarks/target/benchmarks.jar com.itm.space.backendbenchmarks.load.UserLoadTest \
+ *      --base-url=http://localhost:9191 --token-url=http://localhost:8080/auth/realms/ITM/protocol/openid-connect/token \
+ *      --concurrency=64 --duration=30s --warmup=5s --mix=get:80,list:15,create:5
+ * </pre>
+ */
+public class UserLoadTest {
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final Map<String, String> options;
+    private final String baseUrl;
+    private final Map<String, Recorder> latencies = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> errors = new HashMap<>();
+    private final List<String> operations = new ArrayList<>();
+    private final AtomicLong created = new AtomicLong();
+    private volatile boolean recording;
+    private String authorization;
+    private List<String> userIds;
+
+    UserLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.baseUrl = options.getOrDefault("base-url", "http://localhost:9191");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        this.httpClient = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (String weighted : options.getOrDefault("mix", "get:80,list:15,create:5").split(",")) {
+            String[] operation = weighted.split(":");
+            latencies.put(operation[0], new Recorder(MAX_LATENCY_NANOS, 3));
+            errors.put(operation[0], new AtomicLong());
+            for (int i = 0; i < Integer.parseInt(operation[1]); i++) {
+                operations.add(operation[0]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new UserLoadTest(options).run();
+    }
+
+    void run() throws Exception {
+        authorization = "Bearer " + fetchToken();
+        userIds = fetchUserIds();
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        long warmupNanos = parseDuration(options.getOrDefault("warmup", "5s"));
+        long durationNanos = parseDuration(options.getOrDefault("duration", "30s"));
+        System.out.printf("Running %s against %s: %d clients, %ds warmup, %ds measured, %d known users%n",
+                operations.stream().distinct().toList(), baseUrl, concurrency,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos), userIds.size());
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long deadline = System.nanoTime() + warmupNanos + durationNanos;
+        for (int i = 0; i < concurrency; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    execute(operations.get(ThreadLocalRandom.current().nextInt(operations.size())));
+                }
+            });
+        }
+        TimeUnit.NANOSECONDS.sleep(warmupNanos);
+        latencies.values().forEach(Recorder::reset); //результаты прогрева не учитываем
+        errors.values().forEach(counter -> counter.set(0));
+        recording = true;
+        TimeUnit.NANOSECONDS.sleep(durationNanos);
+        recording = false;
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        report(durationNanos);
+        System.exit(0);
+    }
+
+    private void execute(String operation) {
+        HttpRequest request = switch (operation) {
+            case "get" -> authorized("/api/users/" + userIds.get(ThreadLocalRandom.current().nextInt(userIds.size())))
+                    .GET().build();
+            case "list" -> authorized("/api/users?first=" + ThreadLocalRandom.current().nextInt(userIds.size()) + "&max=20")
+                    .GET().build();
+            case "create" -> authorized("/api/users")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(newUserJson(), StandardCharsets.UTF_8))
+                    .build();
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        };
+        long start = System.nanoTime();
+        boolean failed;
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            failed = response.statusCode() >= 400;
+        } catch (IOException ex) {
+            failed = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long latency = Math.min(System.nanoTime() - start, MAX_LATENCY_NANOS);
+        if (recording) {
+            latencies.get(operation).recordValue(latency);
+            if (failed) {
+                errors.get(operation).incrementAndGet();
+            }
+        }
+    }
+
+    private void report(long durationNanos) {
+        double seconds = durationNanos / 1e9;
+        System.out.printf("%-8s %10s %10s %8s %9s %9s %9s %9s %9s%n",
+                "op", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+        long totalErrors = 0;
+        for (Map.Entry<String, Recorder> entry : latencies.entrySet()) {
+            Histogram histogram = entry.getValue().getIntervalHistogram();
+            total.add(histogram);
+            totalErrors += errors.get(entry.getKey()).get();
+            printRow(entry.getKey(), histogram, errors.get(entry.getKey()).get(), seconds);
+        }
+        printRow("total", total, totalErrors, seconds);
+    }
+
+    private static void printRow(String operation, Histogram histogram, long errors, double seconds) {
+        System.out.printf("%-8s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, histogram.getTotalCount(), histogram.getTotalCount() / seconds, errors,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private HttpRequest.Builder authorized(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", authorization);
+    }
+
+    private String newUserJson() {
+        long id = created.incrementAndGet();
+        String username = "load" + ProcessHandle.current().pid() + "-" + id;
+        return "{\"username\":\"" + username + "\",\"email\":\"" + username + "@mail.ru\",\"password\":\"secret\","
+                + "\"firstName\":\"Load\",\"lastName\":\"Test\"}";
+    }
+
+    private String fetchToken() throws IOException, InterruptedException {
+        String tokenUrl = options.getOrDefault("token-url",
+                "http://localhost:8080/auth/realms/ITM/protocol/openid-connect/token");
+        String form = "grant_type=password&client_id=" + options.getOrDefault("client-id", "backend-gateway-client")
+                + "&username=" + options.getOrDefault("username", "moderator")
+                + "&password=" + options.getOrDefault("password", "moderator");
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(tokenUrl))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readTree(response.body()).get("access_token").asText();
+    }
+
+    private List<String> fetchUserIds() throws IOException, InterruptedException { //UserResponse не содержит id, берем их у Кейклока
+        String usersUrl = options.getOrDefault("users-url", "http://localhost:8080/auth/admin/realms/ITM/users?max=1000");
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(usersUrl))
+                .header("Authorization", authorization)
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(usersUrl + " returned " + response.statusCode());
+        }
+        List<String> ids = new ArrayList<>();
+        for (JsonNode user : objectMapper.readTree(response.body())) {
+            ids.add(user.get("id").asText());
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No users returned by " + usersUrl);
+        }
+        return ids;
+    }
+
+    private static long parseDuration(String value) {
+        return Duration.parse("PT" + value.toUpperCase()).toNanos();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
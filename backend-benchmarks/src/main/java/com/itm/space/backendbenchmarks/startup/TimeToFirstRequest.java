@@ -0,0 +1,119 @@
+package com.itm.space.backendbenchmarks.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время от запуска процесса backend-resources до первого успешного запроса к API.
+ * Запускает команду {@code --command} {@code --runs} раз, опрашивает {@code --url} с токеном от Кейклока
+ * ({@code --token-url}, например KeycloakStubServer) и печатает время каждого запуска, минимум и медиану.
+ * Первый запрос идет в Кейклок, поэтому в замер входит и создание клиента Кейклока.
+ * <pre>
+ * java -cp backend-benchmarks/target/benchmarks.jar com.itm.space.backendbenchmarks.startup.TimeToFirstRequest \
+ *      --runs=5 --command="java -jar backend-resources/target/backend-resources-0.0.1-SNAPSHOT-exec.jar \
+ *      --keycloak.auth-server-url=http://localhost:8080/auth \
+ *      --spring.security.oauth2.resourceserver.jwt.issuer-uri=http://localhost:8080/auth/realms/ITM"
+ * </pre>
+ */
+public class TimeToFirstRequest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+    private final Map<String, String> options;
+
+    TimeToFirstRequest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new TimeToFirstRequest(options).run();
+    }
+
+    void run() throws Exception {
+        List<String> command = Arrays.asList(options.get("command").trim().split("\\s+"));
+        String url = options.getOrDefault("url", "http://localhost:9191/api/users?first=0&max=1");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        long timeoutNanos = Duration.parse("PT" + options.getOrDefault("timeout", "120s").toUpperCase()).toNanos();
+        String authorization = "Bearer " + fetchToken();
+        System.out.printf("Measuring time to first 2xx from %s, %d runs of: %s%n", url, runs, String.join(" ", command));
+
+        List<Long> results = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            long millis = measure(command, url, authorization, timeoutNanos);
+            System.out.printf("run %d: %d ms%n", run, millis);
+            results.add(millis);
+        }
+        results.sort(null);
+        System.out.printf("min %d ms, median %d ms, max %d ms%n",
+                results.get(0), results.get(results.size() / 2), results.get(results.size() - 1));
+        System.exit(0);
+    }
+
+    private long measure(List<String> command, String url, String authorization, long timeoutNanos) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", authorization)
+                .GET()
+                .build();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(new File(options.getOrDefault("dir", ".")))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (System.nanoTime() - start < timeoutNanos) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Process exited with " + process.exitValue() + " before first response");
+                }
+                try {
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() / 100 == 2) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException ex) {
+                    //порт еще не открыт
+                }
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            throw new IllegalStateException("No successful response from " + url + " within timeout");
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private String fetchToken() throws IOException, InterruptedException {
+        String tokenUrl = options.getOrDefault("token-url",
+                "http://localhost:8080/auth/realms/ITM/protocol/openid-connect/token");
+        String form = "grant_type=password&client_id=" + options.getOrDefault("client-id", "backend-gateway-client")
+                + "&username=" + options.getOrDefault("username", "moderator")
+                + "&password=" + options.getOrDefault("password", "moderator");
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(tokenUrl))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readTree(response.body()).get("access_token").asText();
+    }
+}
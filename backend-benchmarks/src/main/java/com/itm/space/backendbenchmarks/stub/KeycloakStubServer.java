@@ -0,0 +1,312 @@
+package com.itm.space.backendbenchmarks.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.MappingsRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Легкая замена Кейклока для нагрузочного тестирования backend-resources без docker-compose.
+ * Реализует только то, что использует приложение: выдачу токена (подписанный RS256 JWT с ролью MODERATOR),
+ * OIDC discovery и JWKS для resource server, создание и чтение пользователей, role-mappings и группы,
+ * участников ролей и групп и admin-события о созданных пользователях (для индекса пользователей).
+ * Задержка и доля ошибок настраиваются, пользователи хранятся в памяти.
+ * <pre>
+ * java -cp backend-benchmarks/target/benchmarks.jar com.itm.space.backendbenchmarks.stub.KeycloakStubServer \
+ *      --port=8080 --latency-ms=20 --jitter-ms=10 --error-rate=0.01 --users=1000
+ * </pre>
+ * backend-resources запускается с {@code --keycloak.auth-server-url=http://localhost:8080/auth}
+ * и {@code --spring.security.oauth2.resourceserver.jwt.issuer-uri=http://localhost:8080/auth/realms/ITM}.
+ */
+public class KeycloakStubServer implements AutoCloseable {
+    private static final Pattern USER_PATH = Pattern.compile("/auth/admin/realms/[^/]+/users/([^/]+)(/role-mappings|/groups)?");
+    private static final Pattern USERS_PATH = Pattern.compile("/auth/admin/realms/[^/]+/users/?");
+    private static final Pattern MEMBERS_PATH = Pattern.compile("/auth/admin/realms/[^/]+/(roles/[^/]+/users|groups/[^/]+/members)");
+    private static final Pattern ADMIN_REALM_PATH = Pattern.compile("/auth/admin/realms/[^/]+/(roles|groups|events|admin-events)");
+    private static final Pattern REALM_PATH = Pattern.compile("/auth/realms/([^/]+)/(.+)");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, UserRepresentation> users = new ConcurrentHashMap<>();
+    private final Deque<AdminEventRepresentation> adminEvents = new ConcurrentLinkedDeque<>(); //новые в начале, как отдает Кейклок
+    private final StubSettings settings;
+    private final RSAKey signingKey;
+    private final HttpServer server;
+
+    public KeycloakStubServer(StubSettings settings) throws IOException {
+        this.settings = settings;
+        try {
+            this.signingKey = new RSAKeyGenerator(2048).keyID("stub").generate();
+        } catch (JOSEException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (int i = 0; i < settings.users(); i++) {
+            addUser("user" + i, "user" + i + "@mail.ru");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(settings.port()), 1024);
+        this.server.setExecutor(Executors.newCachedThreadPool()); //задержка не должна выстраивать запросы в очередь
+        this.server.createContext("/auth/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        KeycloakStubServer stub = new KeycloakStubServer(StubSettings.parse(args));
+        stub.start();
+        System.out.printf("Keycloak stub listening on %s with %s%n", stub.baseUrl(), stub.settings);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/auth";
+    }
+
+    public List<String> userIds() {
+        return List.copyOf(users.keySet());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Matcher realm = REALM_PATH.matcher(path);
+            if (realm.matches()) { //эндпоинты OIDC не замедляем, иначе страдает старт приложения
+                handleRealm(exchange, realm.group(1), realm.group(2));
+                return;
+            }
+            simulateLatency();
+            if (ThreadLocalRandom.current().nextDouble() < settings.errorRate()) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            handleAdmin(exchange, path);
+        } catch (RuntimeException ex) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleRealm(HttpExchange exchange, String realm, String resource) throws IOException {
+        String issuer = baseUrl() + "/realms/" + realm;
+        switch (resource) {
+            case ".well-known/openid-configuration" -> writeJson(exchange, 200, Map.of(
+                    "issuer", issuer,
+                    "jwks_uri", issuer + "/protocol/openid-connect/certs",
+                    "token_endpoint", issuer + "/protocol/openid-connect/token",
+                    "authorization_endpoint", issuer + "/protocol/openid-connect/auth",
+                    "subject_types_supported", List.of("public"),
+                    "id_token_signing_alg_values_supported", List.of("RS256")));
+            case "protocol/openid-connect/certs" ->
+                    writeJson(exchange, 200, new JWKSet(signingKey.toPublicJWK()).toJSONObject());
+            case "protocol/openid-connect/token" -> {
+                simulateLatency();
+                writeJson(exchange, 200, issueToken(issuer, formParams(exchange)));
+            }
+            default -> exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    private void handleAdmin(HttpExchange exchange, String path) throws IOException {
+        String method = exchange.getRequestMethod();
+        Matcher userPath = USER_PATH.matcher(path);
+        if (USERS_PATH.matcher(path).matches()) {
+            if ("POST".equals(method)) {
+                createUser(exchange);
+            } else {
+                writeJson(exchange, 200, listUsers(queryParams(exchange.getRequestURI())));
+            }
+        } else if (MEMBERS_PATH.matcher(path).matches()) { //у всех пользователей заглушки одни и те же роли и группа
+            writeJson(exchange, 200, listUsers(queryParams(exchange.getRequestURI())));
+        } else if (ADMIN_REALM_PATH.matcher(path).matches()) {
+            Map<String, String> params = queryParams(exchange.getRequestURI());
+            switch (path.substring(path.lastIndexOf('/') + 1)) {
+                case "roles" -> writeJson(exchange, 200, List.of(role("MODERATOR"), role("default-roles-itm")));
+                case "groups" -> writeJson(exchange, 200, List.of(moderatorsGroup()));
+                case "admin-events" -> writeJson(exchange, 200, adminEvents.stream()
+                        .skip(Integer.parseInt(params.getOrDefault("first", "0")))
+                        .limit(Integer.parseInt(params.getOrDefault("max", "100")))
+                        .toList());
+                default -> writeJson(exchange, 200, List.of());
+            }
+        } else if (userPath.matches() && "GET".equals(method)) {
+            UserRepresentation user = users.get(userPath.group(1));
+            if (user == null) {
+                writeJson(exchange, 404, Map.of("error", "User not found"));
+            } else if ("/role-mappings".equals(userPath.group(2))) {
+                MappingsRepresentation mappings = new MappingsRepresentation();
+                mappings.setRealmMappings(List.of(role("MODERATOR"), role("default-roles-itm")));
+                writeJson(exchange, 200, mappings);
+            } else if ("/groups".equals(userPath.group(2))) {
+                writeJson(exchange, 200, List.of(moderatorsGroup()));
+            } else {
+                writeJson(exchange, 200, user);
+            }
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    private void createUser(HttpExchange exchange) throws IOException {
+        UserRepresentation request = objectMapper.readValue(exchange.getRequestBody(), UserRepresentation.class);
+        boolean exists = users.values().stream().anyMatch(user -> user.getUsername().equals(request.getUsername()));
+        if (exists) {
+            writeJson(exchange, 409, Map.of("errorMessage", "User exists with same username"));
+            return;
+        }
+        UserRepresentation user = addUser(request.getUsername(), request.getEmail());
+        user.setFirstName(request.getFirstName());
+        user.setLastName(request.getLastName());
+        AdminEventRepresentation event = new AdminEventRepresentation();
+        event.setTime(System.currentTimeMillis());
+        event.setOperationType("CREATE");
+        event.setResourceType("USER");
+        event.setResourcePath("users/" + user.getId());
+        adminEvents.addFirst(event);
+        exchange.getResponseHeaders().add("Location", baseUrl() + exchange.getRequestURI().getPath() + "/" + user.getId());
+        exchange.sendResponseHeaders(201, -1);
+    }
+
+    private List<UserRepresentation> listUsers(Map<String, String> params) {
+        String search = params.getOrDefault("search", "");
+        int first = Integer.parseInt(params.getOrDefault("first", "0"));
+        int max = Integer.parseInt(params.getOrDefault("max", "100"));
+        return users.values().stream()
+                .filter(user -> user.getUsername().contains(search) || user.getEmail().contains(search))
+                .sorted((left, right) -> left.getUsername().compareTo(right.getUsername()))
+                .skip(first)
+                .limit(max)
+                .toList();
+    }
+
+    private UserRepresentation addUser(String username, String email) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(UUID.randomUUID().toString());
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setEnabled(true);
+        users.put(user.getId(), user);
+        return user;
+    }
+
+    private AccessTokenResponse issueToken(String issuer, Map<String, String> form) {
+        String subject = form.getOrDefault("username", "service-account-" + form.getOrDefault("client_id", "client"));
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject(subject)
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(settings.tokenTtlSeconds())))
+                .claim("preferred_username", subject)
+                .claim("realm_access", Map.of("roles", List.of("MODERATOR")))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        try {
+            jwt.sign(new RSASSASigner(signingKey));
+        } catch (JOSEException ex) {
+            throw new IllegalStateException(ex);
+        }
+        AccessTokenResponse token = new AccessTokenResponse();
+        token.setToken(jwt.serialize());
+        token.setTokenType("Bearer");
+        token.setExpiresIn(settings.tokenTtlSeconds());
+        return token;
+    }
+
+    private void simulateLatency() {
+        long latency = settings.latencyMillis()
+                + (settings.jitterMillis() > 0 ? ThreadLocalRandom.current().nextLong(settings.jitterMillis() + 1) : 0);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void writeJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static GroupRepresentation moderatorsGroup() {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId("moderators");
+        group.setName("Moderators");
+        return group;
+    }
+
+    private static RoleRepresentation role(String name) {
+        RoleRepresentation role = new RoleRepresentation();
+        role.setName(name);
+        return role;
+    }
+
+    private static Map<String, String> formParams(HttpExchange exchange) throws IOException {
+        return parseParams(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> queryParams(URI uri) {
+        return parseParams(uri.getRawQuery());
+    }
+
+    private static Map<String, String> parseParams(String encoded) {
+        Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
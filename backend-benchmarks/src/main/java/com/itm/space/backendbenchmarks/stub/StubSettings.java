@@ -0,0 +1,26 @@
+package com.itm.space.backendbenchmarks.stub;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Параметры {@link KeycloakStubServer}, задаются аргументами вида {@code --latency-ms=20}.
+ */
+public record StubSettings(int port, long latencyMillis, long jitterMillis, double errorRate, int users,
+                           long tokenTtlSeconds) {
+
+    public static StubSettings parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        return new StubSettings(
+                Integer.parseInt(options.getOrDefault("port", "8080")),
+                Long.parseLong(options.getOrDefault("latency-ms", "0")),
+                Long.parseLong(options.getOrDefault("jitter-ms", "0")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")),
+                Integer.parseInt(options.getOrDefault("users", "1000")),
+                Long.parseLong(options.getOrDefault("token-ttl", "300")));
+    }
+}
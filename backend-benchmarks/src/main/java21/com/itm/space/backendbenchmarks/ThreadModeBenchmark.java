@@ -0,0 +1,164 @@
+package com.itm.space.backendbenchmarks;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.mapper.UserMapperImpl;
+import com.itm.space.backendresources.service.KeycloakCallTemplate;
+import com.itm.space.backendresources.service.UserIndex;
+import com.itm.space.backendresources.service.UserServiceImpl;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.MappingsRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Пачка из {@code concurrency} одновременных {@code getUserById} через {@link UserServiceImpl}, каждый вызов
+ * заглушки Кейклока блокируется на {@code latencyMs}.
+ * platform - пул запросов как у Tomcat по умолчанию (200 потоков) и keycloakExecutor из конфигурации (16 потоков);
+ * virtual - и запросы, и вызовы Кейклока на виртуальных потоках, как при {@code spring.threads.virtual.enabled=true}.
+ * Очередь keycloakExecutor и bulkhead здесь не ограничены, чтобы сравнивать только модель потоков.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+    private static final UUID USER_ID = UUID.fromString("3d40251d-829c-454e-b389-ec5e9c38a4cc");
+
+    @Param({"platform", "virtual"})
+    private String mode;
+    @Param({"200", "2000"})
+    private int concurrency;
+    @Param("10")
+    private int latencyMs;
+
+    private ExecutorService requestExecutor;
+    private ThreadPoolTaskExecutor platformKeycloakExecutor;
+    private LocalValidatorFactoryBean validator;
+    private UserServiceImpl userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AsyncTaskExecutor keycloakExecutor;
+        if ("virtual".equals(mode)) {
+            requestExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tomcat-", 0).factory());
+            keycloakExecutor = new TaskExecutorAdapter(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("keycloak-", 0).factory()));
+        } else {
+            requestExecutor = Executors.newFixedThreadPool(200);
+            platformKeycloakExecutor = new ThreadPoolTaskExecutor();
+            platformKeycloakExecutor.setCorePoolSize(16);
+            platformKeycloakExecutor.setMaxPoolSize(16);
+            platformKeycloakExecutor.initialize();
+            keycloakExecutor = platformKeycloakExecutor;
+        }
+        validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+
+        Bulkhead bulkhead = Bulkhead.of("keycloak", BulkheadConfig.custom().maxConcurrentCalls(Integer.MAX_VALUE).build());
+        ObjectProvider<Tracer> noTracer = new DefaultListableBeanFactory().getBeanProvider(Tracer.class);
+        KeycloakCallTemplate keycloakCalls = new KeycloakCallTemplate(new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("keycloak"), bulkhead, Retry.ofDefaults("keycloak"), noTracer);
+        userService = new UserServiceImpl(stubKeycloak(), keycloakCalls, new UserMapperImpl(),
+                keycloakExecutor, new NoOpCacheManager(), validator,
+                new UserIndex(null, keycloakCalls, new SimpleMeterRegistry()), noTracer); //индекс выключен: замеряем вызовы Кейклока
+        ReflectionTestUtils.setField(userService, "realm", "ITM");
+        ReflectionTestUtils.setField(userService, "callTimeout", Duration.ofMinutes(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+        if (platformKeycloakExecutor != null) {
+            platformKeycloakExecutor.shutdown();
+        }
+        validator.close();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<UserResponse>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(requestExecutor.submit(() -> userService.getUserById(USER_ID)));
+        }
+        int completed = 0;
+        for (Future<UserResponse> response : responses) {
+            response.get();
+            completed++;
+        }
+        return completed;
+    }
+
+    private Keycloak stubKeycloak() {
+        Keycloak keycloak = stub(Keycloak.class);
+        RealmResource realmResource = stub(RealmResource.class);
+        UsersResource usersResource = stub(UsersResource.class);
+        UserResource userResource = stub(UserResource.class);
+        RoleMappingResource roleMappingResource = stub(RoleMappingResource.class);
+        MappingsRepresentation mappings = new MappingsRepresentation();
+        mappings.setRealmMappings(IntStream.range(0, 5).mapToObj(i -> Fixtures.role("ROLE" + i)).toList());
+
+        when(keycloak.realm(anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(anyString())).thenReturn(userResource);
+        when(userResource.toRepresentation()).thenAnswer(invocation -> slow(Fixtures.user(USER_ID.toString())));
+        when(userResource.roles()).thenReturn(roleMappingResource);
+        when(roleMappingResource.getAll()).thenAnswer(invocation -> slow(mappings));
+        when(userResource.groups()).thenAnswer(invocation -> slow(List.of(Fixtures.group("Moderators"))));
+        return keycloak;
+    }
+
+    private <T> T slow(T value) throws InterruptedException {
+        Thread.sleep(latencyMs); //ответ Кейклока по сети
+        return value;
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+}
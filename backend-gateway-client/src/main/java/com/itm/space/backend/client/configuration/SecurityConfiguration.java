@@ -0,0 +1,24 @@
+package com.itm.space.backend.client.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+@Configuration
+@EnableWebFluxSecurity
+public class SecurityConfiguration {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        http
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers("/actuator/health", "/actuator/prometheus").permitAll() // метрики и health-check снимаются без логина
+                        .anyExchange().authenticated())
+                .oauth2Login(Customizer.withDefaults()) // как и раньше, остальные запросы идут через логин в Кейклоке
+                .oauth2Client(Customizer.withDefaults());
+        return http.build();
+    }
+}
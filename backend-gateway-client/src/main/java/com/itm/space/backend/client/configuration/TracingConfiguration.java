@@ -0,0 +1,74 @@
+package com.itm.space.backend.client.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.sleuth.Span;
+import org.springframework.cloud.sleuth.TraceContext;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.cloud.sleuth.exporter.SpanReporter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Трассировка шлюза (Spring Cloud Sleuth): спан входящего запроса и спан вызова backend-resources создает Sleuth,
+ * контекст уходит в backend-resources в заголовке {@code traceparent} (W3C, как у OpenTelemetry).
+ * Здесь добавлен спан {@code oauth2 authorize} вокруг получения и обновления токена для {@code TokenRelay}
+ * и локальная выгрузка спанов в лог ({@code gateway.tracing.exporter=log}), без Zipkin и коллектора.
+ */
+@Configuration
+public class TracingConfiguration {
+    private static final Logger log = LoggerFactory.getLogger("tracing.spans");
+
+    /**
+     * Тот же менеджер, что строит Spring Cloud Gateway для {@code TokenRelay}, но каждый вызов в своем спане.
+     * Менеджер шлюза создается без условия на отсутствие своего, поэтому имя другое, а {@code TokenRelay} берет этот
+     * как {@code @Primary}.
+     */
+    @Bean
+    @Primary
+    public ReactiveOAuth2AuthorizedClientManager tracingReactiveOAuth2AuthorizedClientManager(
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+            ObjectProvider<Tracer> tracer) {
+        DefaultReactiveOAuth2AuthorizedClientManager manager =
+                new DefaultReactiveOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientRepository);
+        manager.setAuthorizedClientProvider(ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
+                .authorizationCode()
+                .refreshToken()
+                .build());
+        Tracer available = tracer.getIfAvailable();
+        if (available == null) { //spring.sleuth.enabled=false
+            return manager;
+        }
+        return request -> Mono.deferContextual(context -> {
+            Span.Builder span = available.spanBuilder();
+            TraceContext parent = context.getOrDefault(TraceContext.class, null); //спан запроса кладет Sleuth
+            if (parent != null) {
+                span.setParent(parent); //до name/tag: Brave создает спан при первом из них
+            }
+            Span started = span.name("oauth2 authorize")
+                    .tag("oauth2.client-registration", request.getClientRegistrationId())
+                    .start();
+            return manager.authorize(request)
+                    .doOnError(started::error)
+                    .doFinally(signal -> started.end());
+        });
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "gateway.tracing.exporter", havingValue = "log", matchIfMissing = true)
+    public SpanReporter loggingSpanReporter() {
+        return span -> log.info("'{}' : {} {} {} parent={} {}us {}{}", span.getName(), span.getTraceId(), span.getSpanId(),
+                span.getKind(), span.getParentId(), span.getEndTimestamp() - span.getStartTimestamp(), //метки Brave - в микросекундах
+                span.getTags(), span.getError() != null ? " error=" + span.getError() : "");
+    }
+}
@@ -0,0 +1,70 @@
+package com.itm.space.backend.client.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Пул соединений шлюза к backend-resources. Основные параметры берутся из
+ * {@code spring.cloud.gateway.httpclient.pool.*}, здесь добавлены то, чего там нет:
+ * ограничение очереди ожидания соединения, LIFO-выдача и h2c.
+ */
+@Configuration
+public class UpstreamHttpClientConfiguration {
+    @Value("${gateway.httpclient.pool.pending-acquire-max-count:1000}") //дальше очереди - сразу ошибка, а не рост задержки
+    private int pendingAcquireMaxCount;
+    @Value("${gateway.httpclient.pool.lifo:true}") //свежие соединения в работе, лишние дожидаются max-idle-time
+    private boolean lifo;
+
+    @Bean
+    public HttpClientFactory gatewayHttpClientFactory(HttpClientProperties properties,
+                                                      ServerProperties serverProperties,
+                                                      List<HttpClientCustomizer> customizers) {
+        return new HttpClientFactory(properties, serverProperties, customizers) {
+            @Override
+            protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+                HttpClientProperties.Pool pool = properties.getPool();
+                if (pool.getType() == HttpClientProperties.Pool.PoolType.DISABLED) {
+                    return ConnectionProvider.newConnection();
+                }
+                ConnectionProvider.Builder builder = ConnectionProvider.builder(pool.getName())
+                        .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                        .pendingAcquireTimeout(Duration.ofMillis(pool.getAcquireTimeout()))
+                        .evictInBackground(pool.getEvictionInterval())
+                        .metrics(pool.isMetrics()); //reactor.netty.connection.provider.*{name=proxy}
+                if (pool.getType() == HttpClientProperties.Pool.PoolType.FIXED) {
+                    builder.maxConnections(pool.getMaxConnections());
+                } else {
+                    builder.maxConnections(Integer.MAX_VALUE);
+                }
+                if (pool.getMaxIdleTime() != null) {
+                    builder.maxIdleTime(pool.getMaxIdleTime());
+                }
+                if (pool.getMaxLifeTime() != null) {
+                    builder.maxLifeTime(pool.getMaxLifeTime());
+                }
+                return (lifo ? builder.lifo() : builder.fifo()).build();
+            }
+        };
+    }
+
+    /**
+     * HTTP/2 без TLS до backend-resources: запросы мультиплексируются в несколько соединений
+     * вместо одного соединения на запрос. Если backend не поддерживает h2c, соединение остается HTTP/1.1.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "gateway.httpclient.h2c", havingValue = "true")
+    public HttpClientCustomizer h2cHttpClientCustomizer() {
+        return httpClient -> httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+    }
+}
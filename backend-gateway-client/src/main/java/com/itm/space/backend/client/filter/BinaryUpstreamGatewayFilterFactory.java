@@ -0,0 +1,192 @@
+package com.itm.space.backend.client.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бинарный формат на участке шлюз - backend-resources: в Accept запроса первым ставится Smile или CBOR.
+ * Если клиент сам просил этот формат, ответ идет как есть; если клиенту нужен JSON, ответ перекодируется
+ * в JSON по токенам, без построения объектов. Остальные типы (NDJSON, text/plain) не трогаются.
+ * При перекодировании Accept-Encoding в backend не передается: тело нужно шлюзу несжатым, клиенту его сжимает шлюз.
+ * Фильтр стоит раньше {@link UserResponseCacheGatewayFilterFactory}, поэтому в кэше лежит компактное бинарное тело.
+ */
+@Component
+public class BinaryUpstreamGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<BinaryUpstreamGatewayFilterFactory.Config> {
+    static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final MeterRegistry meterRegistry;
+    private final int maxBodySize;
+
+    public BinaryUpstreamGatewayFilterFactory(@Value("${gateway.binary-upstream.max-body-size:16MB}") DataSize maxBodySize,
+                                              MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.maxBodySize = (int) maxBodySize.toBytes();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("format");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Format format = config.getFormat();
+        Timer transcodeTimer = Timer.builder("gateway.transcode")
+                .description("Time to transcode an upstream binary response body to JSON")
+                .tag("format", format.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+        DistributionSummary upstreamBytes = transcodedBytes(format, "upstream");
+        DistributionSummary downstreamBytes = transcodedBytes(format, "downstream");
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            List<MediaType> accept = exchange.getRequest().getHeaders().getAccept();
+            boolean wantsBinary = accept.stream().anyMatch(format.mediaType::equalsTypeAndSubtype);
+            boolean acceptsJson = accept.isEmpty() || accept.stream().anyMatch(type -> type.includes(MediaType.APPLICATION_JSON));
+            if (wantsBinary || !acceptsJson) {
+                return chain.filter(exchange);
+            }
+            List<MediaType> upstreamAccept = new ArrayList<>();
+            upstreamAccept.add(format.mediaType); //тот же Accept клиента, но бинарный формат точнее и идет первым
+            upstreamAccept.addAll(accept.isEmpty() ? List.of(MediaType.ALL) : accept);
+            return chain.filter(exchange.mutate()
+                    .request(request -> request.headers(headers -> {
+                        headers.setAccept(upstreamAccept);
+                        headers.remove(HttpHeaders.ACCEPT_ENCODING);
+                    }))
+                    .response(new TranscodingResponse(exchange.getResponse(), format, transcodeTimer, upstreamBytes, downstreamBytes))
+                    .build());
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2);
+    }
+
+    /**
+     * Smile или CBOR в JSON: события парсера копируются в JSON-генератор один в один.
+     */
+    byte[] transcode(JsonFactory binaryFactory, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 2);
+        try (JsonParser parser = binaryFactory.createParser(body);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private DistributionSummary transcodedBytes(Format format, String side) {
+        return DistributionSummary.builder("gateway.transcode.bytes")
+                .description("Body size of responses transcoded from a binary format to JSON")
+                .baseUnit("bytes")
+                .tag("format", format.name().toLowerCase(Locale.ROOT))
+                .tag("side", side)
+                .register(meterRegistry);
+    }
+
+    private class TranscodingResponse extends ServerHttpResponseDecorator {
+        private final Format format;
+        private final Timer transcodeTimer;
+        private final DistributionSummary upstreamBytes;
+        private final DistributionSummary downstreamBytes;
+
+        TranscodingResponse(ServerHttpResponse delegate, Format format, Timer transcodeTimer,
+                            DistributionSummary upstreamBytes, DistributionSummary downstreamBytes) {
+            super(delegate);
+            this.format = format;
+            this.transcodeTimer = transcodeTimer;
+            this.upstreamBytes = upstreamBytes;
+            this.downstreamBytes = downstreamBytes;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            MediaType contentType = getHeaders().getContentType();
+            if (contentType == null || !format.mediaType.equalsTypeAndSubtype(contentType)) {
+                return super.writeWith(body);
+            }
+            return DataBufferUtils.join(Flux.from(body), maxBodySize)
+                    .map(joined -> {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        DataBufferUtils.release(joined);
+                        return bytes;
+                    })
+                    .defaultIfEmpty(new byte[0])
+                    .flatMap(bytes -> {
+                        if (bytes.length == 0) {
+                            return super.writeWith(Flux.empty()); //пустое тело (204, HEAD) отдаем как есть
+                        }
+                        long start = System.nanoTime();
+                        byte[] json = transcode(format.factory, bytes);
+                        transcodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        upstreamBytes.record(bytes.length);
+                        downstreamBytes.record(json.length);
+                        HttpHeaders headers = getHeaders();
+                        headers.setContentType(MediaType.APPLICATION_JSON);
+                        headers.setContentLength(json.length);
+                        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+                        if (!headers.getVary().contains(HttpHeaders.ACCEPT)) {
+                            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                        }
+                        return super.writeWith(Mono.fromSupplier(() -> bufferFactory().wrap(json)));
+                    });
+        }
+    }
+
+    public enum Format {
+        SMILE(APPLICATION_SMILE, new SmileFactory()),
+        CBOR(MediaType.APPLICATION_CBOR, new CBORFactory());
+
+        private final MediaType mediaType;
+        private final JsonFactory factory;
+
+        Format(MediaType mediaType, JsonFactory factory) {
+            this.mediaType = mediaType;
+            this.factory = factory;
+        }
+    }
+
+    public static class Config {
+        private Format format = Format.SMILE;
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public void setFormat(Format format) {
+            this.format = format;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.itm.space.backend.client.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Min;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token bucket в памяти шлюза для {@code RequestRateLimiter}: Redis не нужен, но лимит считается
+ * отдельно на каждом экземпляре шлюза. Корзина своя для каждой пары маршрут + ключ
+ * (пользователь или IP, см. {@link PrincipalOrIpKeyResolver}), обновляется без блокировок через CAS.
+ * Лимиты маршрута задаются аргументами фильтра {@code in-memory-rate-limiter.*}.
+ */
+@Component
+public class InMemoryRateLimiter extends AbstractRateLimiter<InMemoryRateLimiter.Config> {
+    public static final String CONFIGURATION_PROPERTY_NAME = "in-memory-rate-limiter";
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    private final Config defaultConfig;
+    private final Cache<String, TokenBucket> buckets;
+    private final MeterRegistry meterRegistry;
+
+    public InMemoryRateLimiter(@Value("${gateway.rate-limiter.replenish-rate:10}") int replenishRate,
+                               @Value("${gateway.rate-limiter.burst-capacity:20}") int burstCapacity,
+                               @Value("${gateway.rate-limiter.max-keys:100000}") long maxKeys,
+                               @Value("${gateway.rate-limiter.idle-timeout:10m}") Duration idleTimeout,
+                               ConfigurationService configurationService,
+                               MeterRegistry meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.defaultConfig = new Config().setReplenishRate(replenishRate).setBurstCapacity(burstCapacity);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout) //давно не приходившие ключи забываем: корзина все равно была бы полной
+                .build();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().getOrDefault(routeId, defaultConfig);
+        TokenBucket bucket = buckets.get(routeId + ' ' + id, key -> new TokenBucket(config.getBurstCapacity()));
+        long waitNanos = bucket.tryConsume(config);
+        boolean allowed = waitNanos == 0;
+        counter(routeId, allowed).increment();
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (config.isIncludeHeaders()) {
+            headers.put(REMAINING_HEADER, String.valueOf(bucket.remaining()));
+            headers.put(REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+            headers.put(BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+        }
+        if (!allowed) {
+            long retryAfterSeconds = (waitNanos + 999_999_999L) / 1_000_000_000L; //целые секунды с округлением вверх
+            headers.put(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return Mono.just(new Response(allowed, headers));
+    }
+
+    private Counter counter(String routeId, boolean allowed) {
+        return Counter.builder("gateway.ratelimit.requests")
+                .description("Requests checked by the in-memory rate limiter")
+                .tag("route", routeId)
+                .tag("outcome", allowed ? "allowed" : "denied")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Корзина одного ключа. Состояние неизменяемое и подменяется целиком через compareAndSet,
+     * поэтому конкурирующие запросы одного пользователя не блокируют друг друга.
+     */
+    static class TokenBucket {
+        private final AtomicReference<State> state;
+
+        TokenBucket(int capacity) {
+            this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+        }
+
+        /**
+         * Списывает {@code requestedTokens}; возвращает 0, если получилось, иначе сколько наносекунд ждать.
+         */
+        long tryConsume(Config config) {
+            double tokensPerNano = config.getReplenishRate() / 1e9;
+            while (true) {
+                State current = state.get();
+                long now = System.nanoTime();
+                double tokens = Math.min(config.getBurstCapacity(),
+                        current.tokens() + (now - current.refilledAt()) * tokensPerNano);
+                if (tokens < config.getRequestedTokens()) {
+                    return Math.max(1, (long) Math.ceil((config.getRequestedTokens() - tokens) / tokensPerNano));
+                }
+                if (state.compareAndSet(current, new State(tokens - config.getRequestedTokens(), now))) {
+                    return 0;
+                }
+            }
+        }
+
+        long remaining() {
+            return (long) state.get().tokens();
+        }
+
+        private record State(double tokens, long refilledAt) {
+        }
+    }
+
+    @Validated
+    public static class Config {
+        @Min(1)
+        private int replenishRate; //токенов в секунду
+        @Min(1)
+        private int burstCapacity; //размер корзины - сколько запросов можно сделать разом
+        @Min(1)
+        private int requestedTokens = 1; //стоимость одного запроса
+        private boolean includeHeaders = true;
+
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public Config setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public Config setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+
+        public int getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public Config setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+            return this;
+        }
+
+        public boolean isIncludeHeaders() {
+            return includeHeaders;
+        }
+
+        public Config setIncludeHeaders(boolean includeHeaders) {
+            this.includeHeaders = includeHeaders;
+            return this;
+        }
+    }
+}
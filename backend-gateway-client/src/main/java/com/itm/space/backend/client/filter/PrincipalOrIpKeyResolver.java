@@ -0,0 +1,30 @@
+package com.itm.space.backend.client.filter;
+
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+
+/**
+ * Ключ для {@code RequestRateLimiter}: имя аутентифицированного пользователя,
+ * а для анонимных запросов - IP клиента.
+ */
+@Component("principalOrIpKeyResolver")
+public class PrincipalOrIpKeyResolver implements KeyResolver {
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(name -> "user:" + name)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+                    return remoteAddress == null || remoteAddress.getAddress() == null
+                            ? null //пустой ключ - запрос отклоняется (deny-empty-key)
+                            : "ip:" + remoteAddress.getAddress().getHostAddress();
+                }));
+    }
+}
@@ -0,0 +1,303 @@
+package com.itm.space.backend.client.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш ответов на GET отдельно для каждого пользователя (subject токена) с коротким TTL.
+ * Учитывает Cache-Control запроса (no-store, no-cache) и ответа (no-store, no-cache, max-age), а также Vary ответа:
+ * Accept и Accept-Encoding входят в ключ, остальные заголовки из Vary сверяются с запросом при попадании.
+ * Одинаковые запросы, пришедшие, пока первый еще выполняется, ждут его ответа, а не идут в backend-resources.
+ * Размер кэша ограничен суммарным объемом тел и заголовков ({@code max-weight}), а не числом записей.
+ * Ответ помечается заголовком {@code X-Cache: HIT | MISS | COALESCED}.
+ */
+@Component
+public class UserResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<UserResponseCacheGatewayFilterFactory.Config> {
+    static final String CACHE_STATUS_HEADER = "X-Cache";
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final List<MediaType> STREAMING_TYPES =
+            List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM, MediaType.APPLICATION_OCTET_STREAM);
+
+    private final Cache<String, CachedResponse> cache;
+    private final Map<String, Sinks.One<Optional<CachedResponse>>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+    private final long maxBodySize;
+
+    public UserResponseCacheGatewayFilterFactory(@Value("${gateway.response-cache.max-weight:64MB}") DataSize maxWeight,
+                                                 @Value("${gateway.response-cache.max-body-size:256KB}") DataSize maxBodySize,
+                                                 MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.maxBodySize = maxBodySize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight.toBytes())
+                .weigher((String key, CachedResponse value) -> key.length() + value.weight())
+                .expireAfter(new Expiry<String, CachedResponse>() { //у каждой записи свой срок: TTL маршрута или max-age
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+                        return Math.max(0, value.expiresAt() - currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return Math.max(0, value.expiresAt() - currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.responses"); //cache.gets{result=hit|miss}, cache.size
+        Gauge.builder("gateway.responses.cache.hit.ratio", cache,
+                        c -> c.stats().requestCount() == 0 ? 0 : c.stats().hitRate()) //у Caffeine без запросов hitRate = 1
+                .description("Share of GET requests served from the gateway response cache")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("gateway.responses.cache.coalesced")
+                .description("GET requests that waited for an identical in-flight request")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttl");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        //раньше записи ответа, чтобы перехватить тело, и раньше TokenRelay, чтобы на попадании не трогать токен
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String requestCacheControl = cacheControl(request.getHeaders());
+            if (request.getMethod() != HttpMethod.GET || requestCacheControl.contains("no-store")) {
+                return chain.filter(exchange);
+            }
+            return exchange.getPrincipal()
+                    .map(Principal::getName)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(subject -> subject.isEmpty()
+                            ? chain.filter(exchange) //без пользователя ответ не кэшируем
+                            : filter(exchange, chain, config, cacheKey(subject.get(), request),
+                            requestCacheControl.contains("no-cache")));
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, Config config, String key,
+                              boolean noCache) {
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        if (!noCache) {
+            CachedResponse cached = cache.getIfPresent(key);
+            if (cached != null && cached.matches(requestHeaders)) {
+                return write(exchange.getResponse(), cached, "HIT");
+            }
+        }
+        Sinks.One<Optional<CachedResponse>> leader = Sinks.one();
+        Sinks.One<Optional<CachedResponse>> running = inFlight.putIfAbsent(key, leader);
+        if (running != null) {
+            coalesced.increment();
+            return running.asMono().flatMap(response -> response.isPresent() && response.get().matches(requestHeaders)
+                    ? write(exchange.getResponse(), response.get(), "COALESCED")
+                    : chain.filter(exchange)); //первый ответ не кэшируемый или для других Vary - идем сами
+        }
+        exchange.getResponse().getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+        return chain.filter(exchange.mutate()
+                        .response(new CachingResponse(exchange.getResponse(), requestHeaders, key, config, leader))
+                        .build())
+                .doFinally(signal -> {
+                    inFlight.remove(key, leader);
+                    leader.tryEmitValue(Optional.empty()); //ошибка или отмена - ожидающие пойдут в backend сами
+                });
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, CachedResponse cached, String cacheStatus) {
+        response.setStatusCode(cached.status());
+        response.getHeaders().putAll(cached.headers());
+        response.getHeaders().set(CACHE_STATUS_HEADER, cacheStatus);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body())));
+    }
+
+    private static String cacheKey(String subject, ServerHttpRequest request) { //gzip и несжатый ответ - разные записи
+        return subject + ' ' + request.getURI().getRawPath() + '?' + request.getURI().getRawQuery()
+                + ' ' + request.getHeaders().getFirst(HttpHeaders.ACCEPT)
+                + ' ' + String.join(",", request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private static String cacheControl(HttpHeaders headers) {
+        String cacheControl = String.join(",", headers.getOrEmpty(HttpHeaders.CACHE_CONTROL));
+        if (headers.getOrEmpty(HttpHeaders.PRAGMA).contains("no-cache")) {
+            cacheControl += ",no-cache";
+        }
+        return cacheControl.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Собирает тело ответа backend-resources и, если ответ можно кэшировать, кладет его в кэш
+     * и отдает ожидающим одинаковым запросам. Потоковые и большие ответы пропускаются как есть:
+     * тело без Content-Length копится только до {@code max-body-size}, дальше накопленное и остаток идут клиенту без кэша.
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+        private final HttpHeaders requestHeaders;
+        private final String key;
+        private final Config config;
+        private final Sinks.One<Optional<CachedResponse>> leader;
+
+        CachingResponse(ServerHttpResponse delegate, HttpHeaders requestHeaders, String key, Config config,
+                        Sinks.One<Optional<CachedResponse>> leader) {
+            super(delegate);
+            this.requestHeaders = requestHeaders;
+            this.key = key;
+            this.config = config;
+            this.leader = leader;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Duration ttl = ttl();
+            if (ttl == null) {
+                return super.writeWith(body);
+            }
+            AtomicLong size = new AtomicLong();
+            return Flux.<DataBuffer>from(body)
+                    .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > maxBodySize) //в пределах лимита - один список
+                    .switchOnFirst((first, chunks) -> {
+                        Flux<DataBuffer> buffers = chunks.concatMapIterable(Function.identity());
+                        if (size.get() > maxBodySize) { //без Content-Length размер виден только по ходу: отдаем как есть, без кэша
+                            leader.tryEmitValue(Optional.empty());
+                            return super.writeWith(buffers);
+                        }
+                        return DataBufferUtils.join(buffers)
+                                .map(joined -> {
+                                    byte[] bytes = new byte[joined.readableByteCount()];
+                                    joined.read(bytes);
+                                    DataBufferUtils.release(joined);
+                                    return bytes;
+                                })
+                                .defaultIfEmpty(new byte[0])
+                                .flatMap(bytes -> cacheAndWrite(bytes, ttl));
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then();
+        }
+
+        private Mono<Void> cacheAndWrite(byte[] bytes, Duration ttl) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(getHeaders());
+            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+            headers.remove(CACHE_STATUS_HEADER);
+            headers.setContentLength(bytes.length);
+            Map<String, List<String>> vary = new HashMap<>(); //значения заголовков из Vary у запроса, на который получен ответ
+            headers.getVary().forEach(name -> vary.put(name, requestHeaders.getOrEmpty(name)));
+            CachedResponse cached = new CachedResponse(getStatusCode(), headers, bytes, System.nanoTime() + ttl.toNanos(), vary);
+            cache.put(key, cached);
+            leader.tryEmitValue(Optional.of(cached));
+            return super.writeWith(Mono.fromSupplier(() -> bufferFactory().wrap(bytes)));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(body); //потоковый ответ не кэшируем
+        }
+
+        /**
+         * Сколько хранить ответ: TTL маршрута, но не дольше max-age; {@code null} - не кэшировать.
+         */
+        private Duration ttl() {
+            HttpHeaders headers = getHeaders();
+            String cacheControl = cacheControl(headers);
+            MediaType contentType = headers.getContentType();
+            if (getStatusCode() != HttpStatus.OK
+                    || cacheControl.contains("no-store") || cacheControl.contains("no-cache")
+                    || headers.containsKey(HttpHeaders.SET_COOKIE)
+                    || headers.getVary().contains("*")
+                    || headers.getContentLength() > maxBodySize
+                    || (contentType != null && STREAMING_TYPES.stream().anyMatch(contentType::isCompatibleWith))) {
+                return null;
+            }
+            Duration ttl = config.getTtl();
+            Matcher maxAge = MAX_AGE.matcher(cacheControl);
+            if (maxAge.find()) {
+                Duration maxAgeTtl = Duration.ofSeconds(Long.parseLong(maxAge.group(1)));
+                ttl = ttl.compareTo(maxAgeTtl) < 0 ? ttl : maxAgeTtl;
+            }
+            return ttl.isZero() || ttl.isNegative() ? null : ttl;
+        }
+    }
+
+    record CachedResponse(HttpStatus status, HttpHeaders headers, byte[] body, long expiresAt, Map<String, List<String>> vary) {
+        /**
+         * Примерный объем записи в байтах: тело и заголовки.
+         */
+        int weight() {
+            int weight = body.length;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length();
+                for (String value : header.getValue()) {
+                    weight += value.length();
+                }
+            }
+            return weight;
+        }
+
+        /**
+         * Ответ подходит запросу, если у того те же значения всех заголовков из Vary.
+         */
+        boolean matches(HttpHeaders requestHeaders) {
+            return vary.entrySet().stream().allMatch(entry -> entry.getValue().equals(requestHeaders.getOrEmpty(entry.getKey())));
+        }
+    }
+
+    public static class Config {
+        private Duration ttl = Duration.ofSeconds(10);
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
@@ -1,13 +1,28 @@
 package com.itm.space.backend.client;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@SpringBootTest(properties = { //без обращения к Кейклоку за метаданными issuer
+		"spring.security.oauth2.client.registration.backend-gateway-client.provider=test",
+		"spring.security.oauth2.client.provider.test.authorization-uri=http://keycloak/auth",
+		"spring.security.oauth2.client.provider.test.token-uri=http://keycloak/token",
+		"spring.security.oauth2.client.provider.test.jwk-set-uri=http://keycloak/certs"
+})
 class BackendGatewayClientApplicationTests {
 
+	@Autowired
+	private ApplicationContext context;
+
 	@Test
 	void contextLoads() {
+		assertSame(context.getBean("tracingReactiveOAuth2AuthorizedClientManager"),
+				context.getBean(ReactiveOAuth2AuthorizedClientManager.class)); //TokenRelay получает менеджер со спанами
 	}
 
 }
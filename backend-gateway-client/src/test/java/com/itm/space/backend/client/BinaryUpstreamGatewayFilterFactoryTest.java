@@ -0,0 +1,123 @@
+package com.itm.space.backend.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.itm.space.backend.client.filter.BinaryUpstreamGatewayFilterFactory;
+import com.itm.space.backend.client.filter.UserResponseCacheGatewayFilterFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BinaryUpstreamGatewayFilterFactoryTest {
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+    private static final List<Map<String, Object>> USERS = List.of(
+            Map.of("firstName", "Gleb", "email", "gleb@mail.ru", "roles", List.of("MODERATOR")));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GatewayFilter filter = new BinaryUpstreamGatewayFilterFactory(DataSize.ofMegabytes(1), meterRegistry)
+            .apply(new BinaryUpstreamGatewayFilterFactory.Config());
+    private final AtomicReference<HttpHeaders> upstreamHeaders = new AtomicReference<>();
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    @Test
+    void jsonClientGetsTranscodedSmileResponse() throws Exception {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/users")
+                .header(HttpHeaders.ACCEPT, "*/*")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+        filter.filter(exchange, smileBackend()).block();
+
+        assertEquals(List.of(SMILE, MediaType.ALL), upstreamHeaders.get().getAccept());
+        assertNull(upstreamHeaders.get().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        assertEquals(MediaType.APPLICATION_JSON, exchange.getResponse().getHeaders().getContentType());
+        assertEquals(new ObjectMapper().writeValueAsString(USERS), body(exchange));
+        assertEquals(1, meterRegistry.get("gateway.transcode").timer().count());
+        assertEquals(smile().length, meterRegistry.get("gateway.transcode.bytes").tag("side", "upstream")
+                .summary().totalAmount());
+    }
+
+    @Test
+    void binaryAndStreamingClientsArePassedThrough() throws Exception {
+        ServerWebExchange smileClient = exchange(MockServerHttpRequest.get("/api/users").accept(SMILE));
+        filter.filter(smileClient, smileBackend()).block();
+        ServerWebExchange ndjsonClient = exchange(MockServerHttpRequest.get("/api/users").accept(MediaType.APPLICATION_NDJSON));
+        filter.filter(ndjsonClient, smileBackend()).block();
+
+        assertEquals(List.of(MediaType.APPLICATION_NDJSON), upstreamHeaders.get().getAccept());
+        assertEquals(SMILE, smileClient.getResponse().getHeaders().getContentType());
+        assertArrayEquals(smile(), rawBody(smileClient));
+    }
+
+    @Test
+    void cachedSmileBodyIsTranscodedOnHit() throws Exception {
+        GatewayFilter cache = new UserResponseCacheGatewayFilterFactory(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), meterRegistry)
+                .apply(new UserResponseCacheGatewayFilterFactory.Config());
+        ServerWebExchange first = exchange(MockServerHttpRequest.get("/api/users"));
+        filter.filter(first, forwarded -> cache.filter(forwarded, smileBackend())).block();
+        ServerWebExchange second = exchange(MockServerHttpRequest.get("/api/users"));
+        filter.filter(second, forwarded -> cache.filter(forwarded, smileBackend())).block();
+
+        assertEquals(1, backendCalls.get());
+        assertEquals("HIT", second.getResponse().getHeaders().getFirst("X-Cache"));
+        assertEquals(new ObjectMapper().writeValueAsString(USERS), body(second));
+    }
+
+    private GatewayFilterChain smileBackend() {
+        return exchange -> Mono.defer(() -> {
+            backendCalls.incrementAndGet();
+            upstreamHeaders.set(exchange.getRequest().getHeaders());
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentType(SMILE);
+            return exchange.getResponse().writeWith(Mono.fromSupplier(() -> exchange.getResponse().bufferFactory()
+                    .wrap(smile())));
+        });
+    }
+
+    private static byte[] smile() {
+        try {
+            return new ObjectMapper(new SmileFactory()).writeValueAsBytes(USERS);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request).mutate()
+                .principal(Mono.just(new TestingAuthenticationToken("gleb", null)))
+                .build();
+    }
+
+    private static String body(ServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block(Duration.ofSeconds(5));
+    }
+
+    private static byte[] rawBody(ServerWebExchange exchange) {
+        DataBuffer joined = DataBufferUtils.join(((MockServerHttpResponse) exchange.getResponse()).getBody())
+                .block(Duration.ofSeconds(5));
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        return bytes;
+    }
+}
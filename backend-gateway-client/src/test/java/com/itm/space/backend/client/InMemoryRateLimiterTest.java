@@ -0,0 +1,74 @@
+package com.itm.space.backend.client;
+
+import com.itm.space.backend.client.filter.InMemoryRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.event.FilterArgsEvent;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.validation.Validator;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryRateLimiter rateLimiter = new InMemoryRateLimiter(1, 2, 100, Duration.ofMinutes(1),
+            configurationService(), meterRegistry);
+
+    @Test
+    void burstIsAllowedThenRequestIsDeniedWithRetryAfter() {
+        assertTrue(isAllowed("resources", "user:gleb").isAllowed());
+        assertTrue(isAllowed("resources", "user:gleb").isAllowed());
+        RateLimiter.Response denied = isAllowed("resources", "user:gleb");
+
+        assertFalse(denied.isAllowed());
+        assertEquals("1", denied.getHeaders().get(HttpHeaders.RETRY_AFTER));
+        assertEquals("0", denied.getHeaders().get("X-RateLimit-Remaining"));
+        assertEquals(2.0, meterRegistry.get("gateway.ratelimit.requests").tag("outcome", "allowed").counter().count());
+        assertEquals(1.0, meterRegistry.get("gateway.ratelimit.requests").tag("outcome", "denied").counter().count());
+    }
+
+    @Test
+    void keysHaveSeparateBuckets() {
+        isAllowed("resources", "user:gleb");
+        isAllowed("resources", "user:gleb");
+
+        assertFalse(isAllowed("resources", "user:gleb").isAllowed());
+        assertTrue(isAllowed("resources", "ip:10.0.0.1").isAllowed());
+    }
+
+    @Test
+    void routeArgsOverrideDefaults() {
+        rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "users", Map.of(
+                "in-memory-rate-limiter.replenish-rate", "1",
+                "in-memory-rate-limiter.burst-capacity", "5")));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(isAllowed("users", "user:gleb").isAllowed());
+        }
+        RateLimiter.Response denied = isAllowed("users", "user:gleb");
+        assertFalse(denied.isAllowed());
+        assertEquals("5", denied.getHeaders().get("X-RateLimit-Burst-Capacity"));
+    }
+
+    private RateLimiter.Response isAllowed(String routeId, String key) {
+        return rateLimiter.isAllowed(routeId, key).block();
+    }
+
+    private static ConfigurationService configurationService() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("conversionService", new DefaultFormattingConversionService());
+        return new ConfigurationService(beanFactory, beanFactory.getBeanProvider(ConversionService.class),
+                beanFactory.getBeanProvider(Validator.class));
+    }
+}
@@ -0,0 +1,112 @@
+package com.itm.space.backend.client;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import com.itm.space.backend.client.configuration.TracingConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.sleuth.Span;
+import org.springframework.cloud.sleuth.TraceContext;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.cloud.sleuth.brave.bridge.BraveBaggageManager;
+import org.springframework.cloud.sleuth.brave.bridge.BraveCurrentTraceContext;
+import org.springframework.cloud.sleuth.brave.bridge.BraveTracer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TracingConfigurationTest {
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId("backend-gateway-client")
+            .clientId("backend-gateway-client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://backend-gateway-client:9090/login/oauth2/code/{registrationId}")
+            .authorizationUri("http://backend-keycloak-auth:8080/auth")
+            .tokenUri("http://backend-keycloak-auth:8080/token")
+            .build();
+
+    private final List<MutableSpan> finished = new CopyOnWriteArrayList<>();
+    private final Tracing tracing = Tracing.newBuilder()
+            .addSpanHandler(new SpanHandler() {
+                @Override
+                public boolean end(brave.propagation.TraceContext context, MutableSpan span, Cause cause) {
+                    finished.add(span);
+                    return true;
+                }
+            })
+            .build();
+    private final Tracer tracer = new BraveTracer(tracing.tracer(),
+            new BraveCurrentTraceContext(tracing.currentTraceContext()), new BraveBaggageManager());
+    private final ServerOAuth2AuthorizedClientRepository authorizedClients = mock(ServerOAuth2AuthorizedClientRepository.class);
+
+    @AfterEach
+    void close() {
+        tracing.close();
+    }
+
+    @Test
+    void tokenRelayAuthorizationIsChildSpanOfRequest() {
+        OAuth2AuthorizedClient authorized = new OAuth2AuthorizedClient(REGISTRATION, "gleb", new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "token", Instant.now(), Instant.now().plus(Duration.ofMinutes(5))));
+        when(authorizedClients.loadAuthorizedClient(eq("backend-gateway-client"), any(), any())).thenReturn(Mono.just(authorized));
+        Span request = tracer.nextSpan().name("http get").start();
+
+        OAuth2AuthorizedClient relayed = manager(id -> Mono.just(REGISTRATION)).authorize(authorizeRequest())
+                .contextWrite(Context.of(TraceContext.class, request.context()))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(authorized, relayed);
+        MutableSpan span = finished.get(0);
+        assertEquals("oauth2 authorize", span.name());
+        assertEquals(request.context().spanId(), span.parentId());
+        assertEquals("backend-gateway-client", span.tag("oauth2.client-registration"));
+    }
+
+    @Test
+    void failedAuthorizationEndsSpanWithError() {
+        Mono<OAuth2AuthorizedClient> relayed = manager(id -> Mono.empty()).authorize(authorizeRequest());
+
+        relayed.onErrorResume(ex -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertEquals(1, finished.size());
+        assertNotNull(finished.get(0).error());
+    }
+
+    private ReactiveOAuth2AuthorizedClientManager manager(ReactiveClientRegistrationRepository registrations) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("tracer", tracer);
+        return new TracingConfiguration().tracingReactiveOAuth2AuthorizedClientManager(registrations, authorizedClients,
+                beans.getBeanProvider(Tracer.class));
+    }
+
+    private static OAuth2AuthorizeRequest authorizeRequest() {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users"));
+        return OAuth2AuthorizeRequest.withClientRegistrationId("backend-gateway-client")
+                .principal("gleb")
+                .attribute(ServerWebExchange.class.getName(), exchange)
+                .build();
+    }
+}
@@ -0,0 +1,197 @@
+package com.itm.space.backend.client;
+
+import com.itm.space.backend.client.filter.UserResponseCacheGatewayFilterFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserResponseCacheGatewayFilterFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GatewayFilter filter = new UserResponseCacheGatewayFilterFactory(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1), meterRegistry)
+            .apply(new UserResponseCacheGatewayFilterFactory.Config());
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    @Test
+    void secondGetOfSameUserIsServedFromCache() {
+        ServerWebExchange first = exchange("gleb", MockServerHttpRequest.get("/api/users/1"));
+        filter.filter(first, backend("{\"id\":1}", null)).block();
+        ServerWebExchange second = exchange("gleb", MockServerHttpRequest.get("/api/users/1"));
+        filter.filter(second, backend("{\"id\":2}", null)).block();
+
+        assertEquals(1, backendCalls.get());
+        assertEquals("MISS", cacheStatus(first));
+        assertEquals("HIT", cacheStatus(second));
+        assertEquals("{\"id\":1}", body(second));
+    }
+
+    @Test
+    void cacheIsPerUser() {
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1")), backend("{}", null)).block();
+        filter.filter(exchange("anna", MockServerHttpRequest.get("/api/users/1")), backend("{}", null)).block();
+
+        assertEquals(2, backendCalls.get());
+    }
+
+    @Test
+    void noCacheRequestAndNoStoreResponseBypassCache() {
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1")), backend("{}", "no-store")).block();
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1")), backend("{}", null)).block();
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")), backend("{}", null)).block();
+
+        assertEquals(3, backendCalls.get());
+    }
+
+    @Test
+    void backendResourcesHeadersDecideCaching() { //заголовки, которые реально отдает backend-resources
+        String springSecurityDefault = "no-cache, no-store, max-age=0, must-revalidate";
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/hello")), backend("gleb", springSecurityDefault)).block();
+        ServerWebExchange hello = exchange("gleb", MockServerHttpRequest.get("/api/users/hello"));
+        filter.filter(hello, backend("gleb", springSecurityDefault)).block();
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1")), backend("{}", "max-age=5, private")).block();
+        ServerWebExchange user = exchange("gleb", MockServerHttpRequest.get("/api/users/1"));
+        filter.filter(user, backend("{}", "max-age=5, private")).block();
+
+        assertEquals(3, backendCalls.get());
+        assertEquals("MISS", cacheStatus(hello));
+        assertEquals("HIT", cacheStatus(user));
+    }
+
+    @Test
+    void chunkedBodyOverLimitPassesThroughUncached() {
+        String chunk = "x".repeat(400); //лимит в тесте - 1 КБ, Content-Length нет
+        GatewayFilterChain chunked = exchange -> {
+            backendCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return exchange.getResponse().writeWith(Flux.range(0, 4).map(i -> exchange.getResponse().bufferFactory()
+                    .wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+        };
+        ServerWebExchange first = exchange("gleb", MockServerHttpRequest.get("/api/users"));
+        filter.filter(first, chunked).block(Duration.ofSeconds(5));
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users")), chunked).block(Duration.ofSeconds(5));
+
+        assertEquals(chunk.repeat(4), body(first));
+        assertEquals(2, backendCalls.get());
+    }
+
+    @Test
+    void gzipResponseIsNotServedToClientWithoutGzip() {
+        GatewayFilterChain varying = exchange -> {
+            backendCalls.incrementAndGet();
+            boolean gzip = exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING).contains("gzip");
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setVary(List.of(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.ORIGIN));
+            if (gzip) {
+                exchange.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory()
+                    .wrap((gzip ? "gzipped" : "plain").getBytes(StandardCharsets.UTF_8))));
+        };
+        filter.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/1").header(HttpHeaders.ACCEPT_ENCODING, "gzip")), varying).block();
+        ServerWebExchange plain = exchange("gleb", MockServerHttpRequest.get("/api/users/1"));
+        filter.filter(plain, varying).block();
+        ServerWebExchange otherOrigin = exchange("gleb", MockServerHttpRequest.get("/api/users/1").header(HttpHeaders.ORIGIN, "http://other"));
+        filter.filter(otherOrigin, varying).block();
+
+        assertEquals(3, backendCalls.get());
+        assertEquals("plain", body(plain));
+        assertEquals("MISS", cacheStatus(otherOrigin)); //Vary: Origin сверяется при попадании
+    }
+
+    @Test
+    void largeBodiesEvictOlderEntries() throws InterruptedException {
+        SimpleMeterRegistry smallRegistry = new SimpleMeterRegistry(); //метрики кэша из поля filter уже в meterRegistry
+        GatewayFilter small = new UserResponseCacheGatewayFilterFactory(DataSize.ofKilobytes(2), DataSize.ofKilobytes(1), smallRegistry)
+                .apply(new UserResponseCacheGatewayFilterFactory.Config());
+        String body = "x".repeat(1000); //по числу записей кэш не ограничен, но двух таких не вмещает
+        for (int id = 1; id <= 3; id++) {
+            small.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/" + id)), backend(body, null)).block();
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos(); //Caffeine вытесняет асинхронно
+        while (smallRegistry.get("cache.evictions").functionCounter().count() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        double evictions = smallRegistry.get("cache.evictions").functionCounter().count();
+        int calls = backendCalls.get();
+        for (int id = 1; id <= 3; id++) {
+            small.filter(exchange("gleb", MockServerHttpRequest.get("/api/users/" + id)), backend(body, null)).block();
+        }
+
+        assertEquals(2.0, evictions);
+        assertTrue(backendCalls.get() - calls >= 2, "only one entry fits into max-weight");
+    }
+
+    @Test
+    void concurrentIdenticalGetsShareOneBackendCall() {
+        Sinks.Empty<Void> release = Sinks.empty();
+        ServerWebExchange leader = exchange("gleb", MockServerHttpRequest.get("/api/users"));
+        ServerWebExchange waiter = exchange("gleb", MockServerHttpRequest.get("/api/users"));
+        Mono<Void> leaderDone = filter.filter(leader, backend("[]", null, release.asMono())).cache();
+        leaderDone.subscribe();
+        Mono<Void> waiterDone = filter.filter(waiter, backend("[1]", null)).cache();
+        waiterDone.subscribe();
+        release.tryEmitEmpty();
+        leaderDone.block(Duration.ofSeconds(5));
+        waiterDone.block(Duration.ofSeconds(5));
+
+        assertEquals(1, backendCalls.get());
+        assertEquals("COALESCED", cacheStatus(waiter));
+        assertEquals("[]", body(waiter));
+        assertEquals(1.0, meterRegistry.get("gateway.responses.cache.coalesced").counter().count());
+    }
+
+    private static ServerWebExchange exchange(String user, MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request).mutate()
+                .principal(Mono.just(new TestingAuthenticationToken(user, null)))
+                .build();
+    }
+
+    private GatewayFilterChain backend(String body, String cacheControl) {
+        return backend(body, cacheControl, Mono.empty());
+    }
+
+    private GatewayFilterChain backend(String body, String cacheControl, Mono<Void> delay) {
+        return exchange -> delay.then(Mono.defer(() -> {
+            backendCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (cacheControl != null) {
+                exchange.getResponse().getHeaders().setCacheControl(cacheControl);
+            }
+            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory()
+                    .wrap(body.getBytes(StandardCharsets.UTF_8))));
+        }));
+    }
+
+    private static String cacheStatus(ServerWebExchange exchange) {
+        return exchange.getResponse().getHeaders().getFirst("X-Cache");
+    }
+
+    private static String body(ServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse())
+                .getBodyAsString().block(Duration.ofSeconds(5));
+    }
+}
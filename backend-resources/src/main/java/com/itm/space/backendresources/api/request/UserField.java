@@ -0,0 +1,68 @@
+package com.itm.space.backendresources.api.request;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.exception.BackendResourcesException;
+import org.springframework.http.HttpStatus;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Поля {@link UserResponse} для параметра {@code fields}: имя, фамилия и email берутся из самого пользователя Кейклока,
+ * роли и группы - отдельными вызовами, которые не выполняются, если поле не запрошено.
+ */
+public enum UserField {
+    FIRST_NAME("firstName"),
+    LAST_NAME("lastName"),
+    EMAIL("email"),
+    ROLES("roles"),
+    GROUPS("groups");
+
+    public static final Set<UserField> ALL = EnumSet.allOf(UserField.class);
+    public static final Set<UserField> PROFILE = EnumSet.of(FIRST_NAME, LAST_NAME, EMAIL);
+
+    private final String name;
+
+    UserField(String name) {
+        this.name = name;
+    }
+
+    /**
+     * {@code fields=email,roles} - набор полей; пустой параметр - null, то есть ответ целиком.
+     */
+    public static Set<UserField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<UserField> result = EnumSet.noneOf(UserField.class);
+        for (String field : fields.split(",")) {
+            result.add(of(field.trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Ответ только с запрошенными полями, остальные null и не попадают в JSON.
+     */
+    public static UserResponse project(UserResponse user, Set<UserField> fields) {
+        if (fields.containsAll(ALL)) {
+            return user;
+        }
+        return new UserResponse(
+                fields.contains(FIRST_NAME) ? user.getFirstName() : null,
+                fields.contains(LAST_NAME) ? user.getLastName() : null,
+                fields.contains(EMAIL) ? user.getEmail() : null,
+                fields.contains(ROLES) ? user.getRoles() : null,
+                fields.contains(GROUPS) ? user.getGroups() : null);
+    }
+
+    private static UserField of(String name) {
+        for (UserField field : values()) {
+            if (field.name.equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new BackendResourcesException("Unknown field \"" + name + "\", expected one of firstName, lastName, email, roles, groups",
+                HttpStatus.BAD_REQUEST);
+    }
+}
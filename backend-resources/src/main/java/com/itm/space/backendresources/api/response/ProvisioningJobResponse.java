@@ -0,0 +1,32 @@
+package com.itm.space.backendresources.api.response;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+public class ProvisioningJobResponse { //состояние задачи асинхронного создания пользователя
+    private final UUID id;
+    private final Status status;
+    private final String username;
+    private final Instant submittedAt;
+    private final Instant finishedAt;
+    private final UserCreationResponse result; //заполняется, когда задача выполнена
+
+    public static ProvisioningJobResponse queued(UUID id, String username, Instant submittedAt) {
+        return new ProvisioningJobResponse(id, Status.QUEUED, username, submittedAt, null, null);
+    }
+
+    public ProvisioningJobResponse running() {
+        return new ProvisioningJobResponse(id, Status.RUNNING, username, submittedAt, null, null);
+    }
+
+    public ProvisioningJobResponse done(UserCreationResponse result) {
+        return new ProvisioningJobResponse(id, Status.DONE, username, submittedAt, Instant.now(), result);
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, DONE
+    }
+}
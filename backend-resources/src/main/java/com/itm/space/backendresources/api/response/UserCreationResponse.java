@@ -0,0 +1,19 @@
+package com.itm.space.backendresources.api.response;
+
+import lombok.Data;
+
+@Data
+public class UserCreationResponse { //результат создания одного пользователя из пакета
+    private final String username;
+    private final String id;
+    private final Integer status;
+    private final String error;
+
+    public static UserCreationResponse created(String username, String id) {
+        return new UserCreationResponse(username, id, 201, null);
+    }
+
+    public static UserCreationResponse failed(String username, int status, String error) {
+        return new UserCreationResponse(username, null, status, error);
+    }
+}
@@ -1,10 +1,12 @@
 package com.itm.space.backendresources.api.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 import java.util.List;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL) //поля, не запрошенные в fields, не выводятся
 public class UserResponse { //ответ
     private final String firstName;
     private final String lastName;
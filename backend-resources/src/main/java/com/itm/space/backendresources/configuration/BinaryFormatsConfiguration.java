@@ -0,0 +1,70 @@
+package com.itm.space.backendresources.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
+/**
+ * Бинарные форматы наряду с JSON: CBOR ({@code application/cbor}) и Smile ({@code application/x-jackson-smile}).
+ * ObjectMapper-ы строятся тем же {@link Jackson2ObjectMapperBuilder}, что и JSON, конвертеры стоят после JSON-конвертера:
+ * на {@code Accept: *}{@code /*} ответ по-прежнему JSON. Строки (hello, тексты ошибок) в бинарные форматы не пишутся.
+ * В реактивном режиме доступен только Smile.
+ */
+@Configuration
+public class BinaryFormatsConfiguration {
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    @Bean
+    @ConditionalOnWebApplication(type = SERVLET)
+    public WebMvcConfigurer binaryMessageConverters(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        ObjectMapper cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        ObjectMapper smileMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                        || converter instanceof MappingJackson2SmileHttpMessageConverter); //умолчания Spring без настроек Boot
+                converters.add(new MappingJackson2CborHttpMessageConverter(cborMapper) {
+                    @Override
+                    public boolean canWrite(Class<?> clazz, @Nullable MediaType mediaType) {
+                        return !CharSequence.class.isAssignableFrom(clazz) && super.canWrite(clazz, mediaType);
+                    }
+                });
+                converters.add(new MappingJackson2SmileHttpMessageConverter(smileMapper) {
+                    @Override
+                    public boolean canWrite(Class<?> clazz, @Nullable MediaType mediaType) {
+                        return !CharSequence.class.isAssignableFrom(clazz) && super.canWrite(clazz, mediaType);
+                    }
+                });
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = REACTIVE)
+    public CodecCustomizer binaryCodecs(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        ObjectMapper smileMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+        return configurer -> { //только Smile: CBOR-кодек Spring не умеет писать Flux, а пользовательские кодеки стоят раньше JSON
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper));
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.itm.space.backendresources.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@EnableCaching //включает кэширование, сам кэш (Caffeine) настраивается в spring.cache
+public class CacheConfiguration {
+
+    public static final String USERS_CACHE = "users";
+
+    @Bean
+    public CaffeineCacheManager cacheManager(@Value("${spring.cache.caffeine.spec:}") String cacheSpecification,
+                                             @Value("${spring.cache.cache-names:" + USERS_CACHE + "}") List<String> cacheNames) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new SingleFlightCaffeineCache(name, cache, isAllowNullValues()); //загрузка при sync=true без synchronized
+            }
+        };
+        if (!cacheSpecification.isBlank()) {
+            cacheManager.setCacheSpecification(cacheSpecification);
+        }
+        cacheManager.setCacheNames(cacheNames);
+        return cacheManager;
+    }
+}
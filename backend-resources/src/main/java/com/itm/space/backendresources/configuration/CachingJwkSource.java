@@ -0,0 +1,243 @@
+package com.itm.space.backendresources.configuration;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ключи подписи токенов Кейклока (JWKS) с кэшем в памяти и в файле.
+ * Ключи обновляются в фоне раз в {@code refreshInterval}; пока Кейклок недоступен, используются старые
+ * ключи, но не дольше {@code maxStale}. Токен с неизвестным kid (ротация ключей) вызывает внеочередное
+ * обновление не чаще раза в {@code minRefreshInterval}. При старте ключи читаются из файла, если он есть,
+ * поэтому сервис поднимается и проверяет токены без Кейклока.
+ */
+@Slf4j
+public class CachingJwkSource implements JWKSource<SecurityContext>, InitializingBean, DisposableBean {
+    private final URL jwkSetUrl;
+    private final Path cacheFile;
+    private final Duration refreshInterval;
+    private final Duration minRefreshInterval;
+    private final Duration maxStale;
+    private final Duration retryDelay;
+    private final DefaultResourceRetriever retriever;
+    private final Timer refreshSuccess;
+    private final Timer refreshFailure;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+
+    private volatile Snapshot snapshot;
+    private volatile long lastRefreshAttempt = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    public CachingJwkSource(URL jwkSetUrl, Path cacheFile, Duration refreshInterval, Duration minRefreshInterval,
+                            Duration maxStale, Duration retryDelay, Duration connectTimeout, Duration readTimeout,
+                            MeterRegistry meterRegistry) {
+        this.jwkSetUrl = jwkSetUrl;
+        this.cacheFile = cacheFile;
+        this.refreshInterval = refreshInterval;
+        this.minRefreshInterval = minRefreshInterval;
+        this.maxStale = maxStale;
+        this.retryDelay = retryDelay;
+        this.retriever = new DefaultResourceRetriever((int) connectTimeout.toMillis(), (int) readTimeout.toMillis(),
+                64 * 1024);
+        this.refreshSuccess = refreshTimer(meterRegistry, "success");
+        this.refreshFailure = refreshTimer(meterRegistry, "failure");
+        Gauge.builder("security.jwks.age", this, CachingJwkSource::ageSeconds)
+                .description("Time since the JWK set was fetched from Keycloak")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("security.jwks.keys", this,
+                        source -> source.snapshot == null ? 0 : source.snapshot.jwkSet().getKeys().size())
+                .description("Keys in the cached JWK set")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        loadCacheFile();
+        scheduler.execute(this::refreshAndReschedule); //с Кейклоком сверяемся в фоне, старт его не ждет
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        Snapshot current = snapshot;
+        if (current == null || current.olderThan(refreshInterval.plus(maxStale))) {
+            current = await(refresh()); //холодный старт без файла или Кейклок недоступен дольше maxStale
+        }
+        List<JWK> keys = jwkSelector.select(current.jwkSet());
+        if (keys.isEmpty() && System.nanoTime() - lastRefreshAttempt >= minRefreshInterval.toNanos()) {
+            keys = jwkSelector.select(await(refresh()).jwkSet()); //неизвестный kid - возможно, Кейклок сменил ключ
+        }
+        return keys;
+    }
+
+    /**
+     * Есть ли ключ в кэше: тогда проверка подписи не пойдет в сеть.
+     */
+    public boolean hasKey(String keyId) {
+        Snapshot current = snapshot;
+        return current != null && !current.olderThan(refreshInterval.plus(maxStale))
+                && (keyId == null ? !current.jwkSet().getKeys().isEmpty() : current.jwkSet().getKeyByKeyId(keyId) != null);
+    }
+
+    CompletableFuture<Snapshot> refresh() {
+        CompletableFuture<Snapshot> refresh = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = inFlight.compareAndExchange(null, refresh);
+        if (running != null) {
+            return running;
+        }
+        lastRefreshAttempt = System.nanoTime();
+        long start = System.nanoTime();
+        try {
+            JWKSet jwkSet = JWKSet.parse(retriever.retrieveResource(jwkSetUrl).getContent());
+            refreshSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Snapshot fetched = new Snapshot(jwkSet, System.currentTimeMillis());
+            snapshot = fetched;
+            writeCacheFile(jwkSet);
+            refresh.complete(fetched);
+        } catch (Exception ex) {
+            refreshFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            refresh.completeExceptionally(ex);
+        } finally {
+            inFlight.set(null);
+        }
+        return refresh;
+    }
+
+    private void refreshAndReschedule() {
+        Duration delay = refreshInterval;
+        try {
+            refresh().join();
+        } catch (RuntimeException ex) {
+            log.warn("JWK set refresh from {} failed, retrying in {}: {}", jwkSetUrl, retryDelay, ex.getMessage());
+            delay = retryDelay;
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::refreshAndReschedule, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Snapshot await(CompletableFuture<Snapshot> refresh) throws KeySourceException {
+        try {
+            return refresh.join();
+        } catch (CompletionException ex) {
+            Snapshot current = snapshot;
+            if (current != null && !current.olderThan(refreshInterval.plus(maxStale))) {
+                return current; //неизвестный kid при недоступном Кейклоке - проверяем тем, что есть
+            }
+            throw new KeySourceException("Couldn't retrieve JWK set from " + jwkSetUrl, ex.getCause());
+        }
+    }
+
+    private void loadCacheFile() {
+        if (cacheFile == null || !Files.isReadable(cacheFile)) {
+            return;
+        }
+        try {
+            if (!trusted(cacheFile)) {
+                log.warn("Ignoring JWK set cache {}: it must be owned by {} and not writable by group or others",
+                        cacheFile, System.getProperty("user.name"));
+                return;
+            }
+            JWKSet jwkSet = JWKSet.parse(Files.readString(cacheFile, StandardCharsets.UTF_8));
+            snapshot = new Snapshot(jwkSet, Files.getLastModifiedTime(cacheFile).toMillis());
+            log.info("Loaded {} signing keys from {}", jwkSet.getKeys().size(), cacheFile);
+        } catch (IOException | ParseException ex) {
+            log.warn("Ignoring unreadable JWK set cache {}: {}", cacheFile, ex.getMessage());
+        }
+    }
+
+    private void writeCacheFile(JWKSet jwkSet) {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "jwks", ".tmp", ownerOnly());
+            Files.writeString(temp, jwkSet.toString(true), StandardCharsets.UTF_8); //только публичные ключи
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Couldn't write JWK set cache {}: {}", cacheFile, ex.getMessage());
+        }
+    }
+
+    /**
+     * Ключами из файла проверяются подписи, поэтому подменить его должен мочь только владелец процесса.
+     */
+    private static boolean trusted(Path file) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return true;
+        }
+        if (!Files.getOwner(file).getName().equals(System.getProperty("user.name"))) {
+            return false;
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+        return !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    private static FileAttribute<?>[] ownerOnly() {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+    }
+
+    private double ageSeconds() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : (System.currentTimeMillis() - current.fetchedAt()) / 1000.0;
+    }
+
+    private static Timer refreshTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("security.jwks.refresh")
+                .description("JWK set requests to Keycloak")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    record Snapshot(JWKSet jwkSet, long fetchedAt) {
+        boolean olderThan(Duration age) {
+            return System.currentTimeMillis() - fetchedAt > age.toMillis();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.itm.space.backendresources.configuration;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
+/**
+ * Проверка JWT без обращения к Кейклоку на старте: вместо discovery по issuer-uri ключи берутся
+ * из {@link CachingJwkSource}, а время разбора и проверки токена пишется в метрику {@code security.jwt.decode}
+ * и, при включенной трассировке, в спан {@code jwt decode}.
+ */
+@Configuration
+public class JwtDecoderConfiguration {
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
+    private String issuerUri;
+    @Value("${security.jwt.jws-algorithms:RS256}")
+    private List<String> jwsAlgorithms;
+    @Value("${security.jwt.clock-skew:30s}") //допустимое расхождение часов с Кейклоком для exp/nbf
+    private Duration clockSkew;
+
+    @Value("${security.jwt.jwks.uri:}") //по умолчанию - certs-эндпоинт реалма Кейклока
+    private String jwkSetUri;
+    @Value("${security.jwt.jwks.cache-file:}") //пусто - ключи только в памяти
+    private String cacheFile;
+    @Value("${security.jwt.jwks.refresh-interval:5m}")
+    private Duration refreshInterval;
+    @Value("${security.jwt.jwks.min-refresh-interval:30s}") //как часто можно перечитывать ключи из-за неизвестного kid
+    private Duration minRefreshInterval;
+    @Value("${security.jwt.jwks.max-stale:24h}") //сколько доверять старым ключам, пока Кейклок недоступен
+    private Duration maxStale;
+    @Value("${security.jwt.jwks.retry-delay:30s}")
+    private Duration retryDelay;
+    @Value("${security.jwt.jwks.connect-timeout:2s}")
+    private Duration connectTimeout;
+    @Value("${security.jwt.jwks.read-timeout:2s}")
+    private Duration readTimeout;
+
+    @Bean
+    public CachingJwkSource jwkSource(MeterRegistry meterRegistry) throws MalformedURLException {
+        URL url = new URL(StringUtils.hasText(jwkSetUri) ? jwkSetUri : issuerUri + "/protocol/openid-connect/certs");
+        return new CachingJwkSource(url, StringUtils.hasText(cacheFile) ? Path.of(cacheFile) : null,
+                refreshInterval, minRefreshInterval, maxStale, retryDelay, connectTimeout, readTimeout, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = SERVLET)
+    public JwtDecoder jwtDecoder(CachingJwkSource jwkSource, MeterRegistry meterRegistry, ObjectProvider<Tracer> tracer) {
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor(jwkSource));
+        decoder.setJwtValidator(jwtValidator());
+        DecodeTimers timers = new DecodeTimers(meterRegistry, tracer.getIfAvailable(() -> Tracer.NOOP));
+        return token -> {
+            long start = System.nanoTime();
+            Span span = timers.startSpan();
+            try {
+                Jwt jwt = decoder.decode(token);
+                timers.record(start, span, null);
+                return jwt;
+            } catch (JwtException ex) {
+                timers.record(start, span, ex);
+                throw ex;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = REACTIVE)
+    public ReactiveJwtDecoder reactiveJwtDecoder(CachingJwkSource jwkSource, MeterRegistry meterRegistry, ObjectProvider<Tracer> tracer) {
+        DefaultJWTProcessor<SecurityContext> processor = jwtProcessor(jwkSource);
+        NimbusReactiveJwtDecoder decoder = new NimbusReactiveJwtDecoder(jwt -> {
+            Mono<JWTClaimsSet> claims = Mono.fromCallable(() -> processor.process(jwt, null));
+            String keyId = jwt instanceof SignedJWT signed ? signed.getHeader().getKeyID() : null;
+            return jwkSource.hasKey(keyId)
+                    ? claims //ключ в кэше - проверка подписи только на CPU, можно на event loop
+                    : claims.subscribeOn(Schedulers.boundedElastic()); //придется сходить в Кейклок
+        });
+        decoder.setJwtValidator(jwtValidator());
+        DecodeTimers timers = new DecodeTimers(meterRegistry, tracer.getIfAvailable(() -> Tracer.NOOP));
+        return token -> Mono.deferContextual(context -> {
+            long start = System.nanoTime();
+            Span span;
+            //в WebFlux спан запроса лежит в контексте Reactor, а не в потоке
+            try (ContextSnapshot.Scope ignored = CONTEXT_SNAPSHOTS.setThreadLocalsFrom(context, ObservationThreadLocalAccessor.KEY)) {
+                span = timers.startSpan();
+            }
+            return decoder.decode(token)
+                    .doOnSuccess(jwt -> timers.record(start, span, null))
+                    .doOnError(ex -> timers.record(start, span, ex));
+        });
+    }
+
+    private DefaultJWTProcessor<SecurityContext> jwtProcessor(CachingJwkSource jwkSource) {
+        Set<JWSAlgorithm> algorithms = jwsAlgorithms.stream().map(JWSAlgorithm::parse).collect(Collectors.toSet());
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(algorithms, jwkSource));
+        processor.setJWTClaimsSetVerifier((claims, context) -> {
+        }); //claims проверяет jwtValidator
+        return processor;
+    }
+
+    private OAuth2TokenValidator<Jwt> jwtValidator() {
+        return new DelegatingOAuth2TokenValidator<>(new JwtTimestampValidator(clockSkew), new JwtIssuerValidator(issuerUri));
+    }
+
+    /**
+     * {@code security.jwt.decode{outcome=valid|invalid|error}}: invalid - токен отклонен (подпись, срок, issuer),
+     * error - не удалось получить ключи.
+     */
+    private static class DecodeTimers {
+        private final Timer valid;
+        private final Timer invalid;
+        private final Timer error;
+        private final Tracer tracer;
+
+        DecodeTimers(MeterRegistry meterRegistry, Tracer tracer) {
+            this.valid = timer(meterRegistry, "valid");
+            this.invalid = timer(meterRegistry, "invalid");
+            this.error = timer(meterRegistry, "error");
+            this.tracer = tracer;
+        }
+
+        Span startSpan() {
+            return tracer.nextSpan().name("jwt decode").start();
+        }
+
+        void record(long start, Span span, Throwable ex) {
+            Timer timer = ex == null ? valid : ex instanceof BadJwtException ? invalid : error;
+            timer.record(Duration.ofNanos(System.nanoTime() - start));
+            if (ex != null) {
+                span.error(ex);
+            }
+            span.tag("outcome", timer == valid ? "valid" : timer == invalid ? "invalid" : "error").end();
+        }
+
+        private static Timer timer(MeterRegistry meterRegistry, String outcome) {
+            return Timer.builder("security.jwt.decode")
+                    .description("Latency of JWT parsing, signature and claims verification")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,14 +1,36 @@
 package com.itm.space.backendresources.configuration;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.keycloak.admin.client.JacksonProvider;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import javax.ws.rs.Priorities;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 import static org.keycloak.OAuth2Constants.CLIENT_CREDENTIALS;
 import static org.keycloak.OAuth2Constants.PASSWORD;
 
+@Slf4j
 @Configuration
 public class KeycloakClientConfiguration {
     @Value("${keycloak.credentials.secret}") //извлекаем значения из соответствующих полей
@@ -20,15 +42,112 @@ public class KeycloakClientConfiguration {
     @Value("${keycloak.realm}")
     private String realm;
 
+    @Value("${keycloak.client.http.max-connections-per-route:32}") //настройки пула соединений к Кейклоку
+    private int maxConnectionsPerRoute;
+    @Value("${keycloak.client.http.max-connections-total:64}")
+    private int maxConnectionsTotal;
+    @Value("${keycloak.client.http.connect-timeout:2s}")
+    private Duration connectTimeout;
+    @Value("${keycloak.client.http.read-timeout:5s}")
+    private Duration readTimeout;
+    @Value("${keycloak.client.http.pool-timeout:1s}") //сколько ждать свободного соединения из пула
+    private Duration poolTimeout;
+    @Value("${keycloak.client.http.keep-alive:30s}")
+    private Duration keepAlive;
+    @Value("${keycloak.client.http.validate-after-inactivity:2s}") //заметно меньше idle-таймаута Кейклока
+    private Duration validateAfterInactivity;
+    @Value("${keycloak.client.http.connection-ttl:5m}")
+    private Duration connectionTtl;
+    @Value("${keycloak.client.token.refresh-ahead:60s}") //за сколько до истечения обновлять токен
+    private Duration tokenRefreshAhead;
+    @Value("${keycloak.client.token.retry-delay:10s}")
+    private Duration tokenRetryDelay;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager keycloakConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(connectionTtl.toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+        connectionManager.setValidateAfterInactivity((int) validateAfterInactivity.toMillis());
+        return connectionManager;
+    }
+
     @Bean
-    public Keycloak keycloak() {
+    public MeterBinder keycloakConnectionPoolMetrics(PoolingHttpClientConnectionManager keycloakConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(keycloakConnectionManager, "keycloak"); //leased, pending, available
+    }
+
+    @Bean
+    @Lazy //RESTEasy и клиент Кейклока поднимаются после старта (keycloakClientWarmUp) или на первом запросе
+    public KeycloakTokenProvider keycloakTokenProvider(PoolingHttpClientConnectionManager keycloakConnectionManager,
+                                                       MeterRegistry meterRegistry) {
+        Keycloak tokenClient = KeycloakBuilder.builder() //отдельный клиент только для получения токена
+                .serverUrl(authUrl)
+                .realm(realm)
+                .grantType(CLIENT_CREDENTIALS)
+                .clientId(clientId)
+                .clientSecret(secretKey)
+                .resteasyClient(resteasyClient(keycloakConnectionManager).build())
+                .build();
+        return new KeycloakTokenProvider(tokenClient, tokenRefreshAhead, tokenRetryDelay, meterRegistry);
+    }
+
+    @Bean
+    @Lazy
+    public Keycloak keycloak(PoolingHttpClientConnectionManager keycloakConnectionManager,
+                             KeycloakTokenProvider keycloakTokenProvider) {
         return KeycloakBuilder.builder()
                 .serverUrl(authUrl)
                 .realm(realm)
                 .grantType(CLIENT_CREDENTIALS)
                 .clientId(clientId)
                 .clientSecret(secretKey)
+                .authorization("") //токен подставляет keycloakTokenProvider, сам клиент его не запрашивает
+                .resteasyClient(resteasyClient(keycloakConnectionManager)
+                        .register(keycloakTokenProvider, Priorities.USER + 1) //после BearerAuthFilter Кейклока
+                        .build())
                 .build(); //установили значения для экземпляра Кейлока
     }
-}
 
+    /**
+     * Создает ленивый клиент Кейклока в фоне сразу после старта, чтобы первый запрос к API его не ждал.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "keycloak.client.warm-up", havingValue = "true", matchIfMissing = true)
+    public ApplicationListener<ApplicationReadyEvent> keycloakClientWarmUp(ObjectProvider<Keycloak> keycloak) {
+        return event -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    keycloak.getObject();
+                } catch (RuntimeException ex) {
+                    log.warn("Keycloak client warm-up failed, it will be created on first use: {}", ex.getMessage());
+                }
+            }, "keycloak-client-init");
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
+    private ResteasyClientBuilder resteasyClient(PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) connectTimeout.toMillis())
+                .setSocketTimeout((int) readTimeout.toMillis())
+                .setConnectionRequestTimeout((int) poolTimeout.toMillis())
+                .build();
+        CloseableHttpClient httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true) //пул общий для клиентов и закрывается вместе с бином
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> { //берем keep-alive сервера, но не дольше заданного
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive.toMillis()) : keepAlive.toMillis();
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        return new ResteasyClientBuilder()
+                .httpEngine(new ApacheHttpClient43Engine(httpClient, true))
+                .register(JacksonProvider.class, 100); //без своего клиента Кейклок регистрирует этот провайдер сам
+    }
+}
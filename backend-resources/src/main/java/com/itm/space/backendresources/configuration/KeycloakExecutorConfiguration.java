@@ -0,0 +1,62 @@
+package com.itm.space.backendresources.configuration;
+
+import io.micrometer.tracing.Tracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Slf4j
+@Configuration
+@Conditional(KeycloakExecutorConfiguration.PlatformThreadsCondition.class) //иначе VirtualThreadConfiguration
+public class KeycloakExecutorConfiguration {
+    private static final String VIRTUAL_THREAD_CONFIGURATION =
+            "com.itm.space.backendresources.configuration.VirtualThreadConfiguration";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsRequested;
+    @Value("${keycloak.client.executor.pool-size:16}") //размер пула потоков для параллельных запросов в Кейклок
+    private int poolSize;
+    @Value("${keycloak.client.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Bean
+    public AsyncTaskExecutor keycloakExecutor(ObjectProvider<Tracer> tracer) {
+        if (virtualThreadsRequested) {
+            log.warn("spring.threads.virtual.enabled=true is ignored: this build has no virtual thread mode (built on JDK < 21, "
+                    + "src/main/java21 not compiled), Tomcat and Keycloak calls use platform threads");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity); //ограниченная очередь, при переполнении задачи отклоняются
+        executor.setThreadNamePrefix("keycloak-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        tracer.ifAvailable(available -> executor.setTaskDecorator(available.currentTraceContext()::wrap)); //спаны вызовов - потомки спана запроса
+        return executor;
+    }
+
+    /**
+     * Пул платформенных потоков нужен, если виртуальные потоки выключены или модуль собран без src/main/java21.
+     */
+    static class PlatformThreadsCondition extends AnyNestedCondition {
+        PlatformThreadsCondition() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "false", matchIfMissing = true)
+        static class VirtualThreadsDisabled {
+        }
+
+        @ConditionalOnMissingClass(VIRTUAL_THREAD_CONFIGURATION)
+        static class VirtualThreadsNotBuilt {
+        }
+    }
+}
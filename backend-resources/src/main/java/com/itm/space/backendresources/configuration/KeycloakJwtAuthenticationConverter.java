@@ -0,0 +1,96 @@
+package com.itm.space.backendresources.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Преобразует JWT Кейклока в аутентификацию с ролями из claim "realm_access.roles".
+ * Набор ролей кэшируется по jti (или самому токену) до истечения токена,
+ * а объекты GrantedAuthority создаются один раз на имя роли.
+ */
+@Component
+public class KeycloakJwtAuthenticationConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+    private static final String REALM_ACCESS = "realm_access";
+    private static final String ROLES = "roles";
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final ConcurrentMap<String, GrantedAuthority> authoritiesByRole = new ConcurrentHashMap<>();
+    private final Cache<String, CachedAuthorities> authoritiesByToken;
+
+    public KeycloakJwtAuthenticationConverter(
+            @Value("${security.jwt.authorities-cache.maximum-size:10000}") long maximumSize,
+            @Value("${security.jwt.authorities-cache.max-ttl:1h}") Duration maxTtl) {
+        this.authoritiesByToken = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ExpiresWithToken(maxTtl))
+                .build();
+    }
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        String key = jwt.getId() != null ? jwt.getId() : jwt.getTokenValue();
+        Collection<GrantedAuthority> authorities = authoritiesByToken
+                .get(key, ignored -> new CachedAuthorities(extractAuthorities(jwt), jwt.getExpiresAt()))
+                .authorities();
+        return new JwtAuthenticationToken(jwt, authorities, jwt.getSubject());
+    }
+
+    private List<GrantedAuthority> extractAuthorities(Jwt jwt) {
+        Object realmAccess = jwt.getClaims().get(REALM_ACCESS);
+        if (!(realmAccess instanceof Map<?, ?> realmAccessMap)
+                || !(realmAccessMap.get(ROLES) instanceof Collection<?> roles)) {
+            return List.of(); //в токене нет ролей реалма
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+        for (Object role : roles) {
+            if (role instanceof String roleName) {
+                authorities.add(authoritiesByRole.computeIfAbsent(roleName,
+                        name -> new SimpleGrantedAuthority(ROLE_PREFIX + name)));
+            }
+        }
+        return List.copyOf(authorities);
+    }
+
+    private record CachedAuthorities(List<GrantedAuthority> authorities, Instant expiresAt) {
+    }
+
+    private record ExpiresWithToken(Duration maxTtl) implements Expiry<String, CachedAuthorities> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedAuthorities value, long currentTime) {
+            if (value.expiresAt() == null) {
+                return maxTtl.toNanos();
+            }
+            Duration ttl = Duration.between(Instant.now(), value.expiresAt());
+            return Math.max(0, Math.min(ttl.toNanos(), maxTtl.toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedAuthorities value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedAuthorities value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.itm.space.backendresources.configuration;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import java.time.Duration;
+
+/**
+ * Защита от медленного или недоступного Кейклока: bulkhead, circuit breaker и retry для идемпотентных вызовов.
+ */
+@Configuration
+public class KeycloakResilienceConfiguration {
+    public static final String KEYCLOAK = "keycloak";
+
+    @Value("${keycloak.client.bulkhead.max-concurrent-calls:32}") //не больше, чем соединений на роут в пуле
+    private int maxConcurrentCalls;
+    @Value("${keycloak.client.bulkhead.max-wait:0ms}") //0 - сразу отказываем, не держим поток
+    private Duration maxWait;
+    @Value("${keycloak.client.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+    @Value("${keycloak.client.circuit-breaker.slow-call-duration-threshold:2s}")
+    private Duration slowCallDurationThreshold;
+    @Value("${keycloak.client.circuit-breaker.slow-call-rate-threshold:80}")
+    private float slowCallRateThreshold;
+    @Value("${keycloak.client.circuit-breaker.sliding-window-size:50}")
+    private int slidingWindowSize;
+    @Value("${keycloak.client.circuit-breaker.minimum-number-of-calls:20}")
+    private int minimumNumberOfCalls;
+    @Value("${keycloak.client.circuit-breaker.wait-duration-in-open-state:10s}")
+    private Duration waitDurationInOpenState;
+    @Value("${keycloak.client.circuit-breaker.permitted-calls-in-half-open-state:5}")
+    private int permittedCallsInHalfOpenState;
+    @Value("${keycloak.client.retry.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${keycloak.client.retry.initial-backoff:100ms}")
+    private Duration initialBackoff;
+    @Value("${keycloak.client.retry.multiplier:2}")
+    private double backoffMultiplier;
+    @Value("${keycloak.client.retry.jitter:0.5}") //доля случайного разброса задержки
+    private double backoffJitter;
+
+    @Bean
+    public BulkheadRegistry keycloakBulkheadRegistry() {
+        return BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(maxWait)
+                .build());
+    }
+
+    @Bean
+    public CircuitBreakerRegistry keycloakCircuitBreakerRegistry() {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDurationThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .recordException(KeycloakResilienceConfiguration::isKeycloakFailure) //4xx - ошибка клиента, а не Кейклока
+                .build());
+    }
+
+    @Bean
+    public RetryRegistry keycloakRetryRegistry() {
+        return RetryRegistry.of(RetryConfig.custom()
+                .maxAttempts(maxAttempts)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(
+                        initialBackoff, backoffMultiplier, backoffJitter))
+                .retryOnException(KeycloakResilienceConfiguration::isKeycloakFailure)
+                .build());
+    }
+
+    @Bean
+    public Bulkhead keycloakBulkhead(BulkheadRegistry keycloakBulkheadRegistry) {
+        return keycloakBulkheadRegistry.bulkhead(KEYCLOAK);
+    }
+
+    @Bean
+    public CircuitBreaker keycloakCircuitBreaker(CircuitBreakerRegistry keycloakCircuitBreakerRegistry) {
+        return keycloakCircuitBreakerRegistry.circuitBreaker(KEYCLOAK);
+    }
+
+    @Bean
+    public Retry keycloakRetry(RetryRegistry keycloakRetryRegistry) {
+        return keycloakRetryRegistry.retry(KEYCLOAK);
+    }
+
+    @Bean
+    public MeterBinder keycloakResilienceMetrics(BulkheadRegistry keycloakBulkheadRegistry,
+                                                 CircuitBreakerRegistry keycloakCircuitBreakerRegistry,
+                                                 RetryRegistry keycloakRetryRegistry) {
+        return registry -> { //состояние breaker-а, свободные места в bulkhead, число повторов
+            TaggedBulkheadMetrics.ofBulkheadRegistry(keycloakBulkheadRegistry).bindTo(registry);
+            TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(keycloakCircuitBreakerRegistry).bindTo(registry);
+            TaggedRetryMetrics.ofRetryRegistry(keycloakRetryRegistry).bindTo(registry);
+        };
+    }
+
+    static boolean isKeycloakFailure(Throwable ex) {
+        if (ex instanceof WebApplicationException webApplicationException) {
+            return webApplicationException.getResponse().getStatus() >= 500;
+        }
+        if (ex instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError();
+        }
+        return ex instanceof ProcessingException //таймаут, обрыв соединения, пустой пул
+                || ex instanceof WebClientRequestException;
+    }
+}
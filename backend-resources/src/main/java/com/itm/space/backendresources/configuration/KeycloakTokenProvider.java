@@ -0,0 +1,150 @@
+package com.itm.space.backendresources.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Токен сервисного аккаунта (client_credentials) для админ-клиента Кейклока.
+ * Токен обновляется в фоне за {@code refreshAhead} до истечения, поэтому потоки запросов его не ждут.
+ * Одновременно выполняется только одно обновление, остальные вызывающие получают его результат.
+ */
+@Slf4j
+public class KeycloakTokenProvider implements ClientRequestFilter, InitializingBean, DisposableBean {
+    private final Keycloak tokenClient;
+    private final Duration refreshAhead;
+    private final Duration retryDelay;
+    private final Timer fetchTimer;
+    private final Counter refreshFailures;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<CompletableFuture<AccessTokenResponse>> inFlight = new AtomicReference<>();
+
+    private volatile Token currentToken; //токен и срок вместе: читатель не увидит новый срок со старым токеном
+
+    public KeycloakTokenProvider(Keycloak tokenClient, Duration refreshAhead, Duration retryDelay,
+                                 MeterRegistry meterRegistry) {
+        this(tokenClient, refreshAhead, retryDelay, meterRegistry, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public KeycloakTokenProvider(Keycloak tokenClient, Duration refreshAhead, Duration retryDelay,
+                                 MeterRegistry meterRegistry, ScheduledExecutorService scheduler) {
+        this.tokenClient = tokenClient;
+        this.scheduler = scheduler;
+        this.refreshAhead = refreshAhead;
+        this.retryDelay = retryDelay;
+        this.fetchTimer = Timer.builder("keycloak.token.fetch")
+                .description("Latency of service account token requests")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("keycloak.token.refresh.failures")
+                .description("Failed service account token requests")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.token.expires.in", this, KeycloakTokenProvider::secondsUntilExpiry)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler.execute(this::refreshAndReschedule); //первый токен получаем в фоне, чтобы не блокировать старт
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        tokenClient.close();
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        requestContext.getHeaders().putSingle(HttpHeaders.AUTHORIZATION, "Bearer " + getAccessToken());
+    }
+
+    public String getAccessToken() {
+        Token token = currentToken;
+        if (token == null || token.expired()) {
+            return refresh(false).join().getToken(); //только на холодном старте или если фоновое обновление не удалось
+        }
+        return token.response().getToken();
+    }
+
+    /**
+     * Текущий токен без ожидания; {@code null}, если его еще нет или он истек.
+     */
+    public String getCachedAccessToken() {
+        Token token = currentToken;
+        return token == null || token.expired() ? null : token.response().getToken();
+    }
+
+    /**
+     * Получает новый токен; одновременные вызовы ждут одного запроса к Кейклоку.
+     * Без {@code force} свежий токен, полученный другим потоком, пока этот шел сюда, не перезапрашивается.
+     */
+    private CompletableFuture<AccessTokenResponse> refresh(boolean force) {
+        CompletableFuture<AccessTokenResponse> refresh = new CompletableFuture<>();
+        CompletableFuture<AccessTokenResponse> running = inFlight.compareAndExchange(null, refresh);
+        if (running != null) {
+            return running;
+        }
+        try {
+            Token current = currentToken;
+            if (!force && current != null && !current.expired()) {
+                refresh.complete(current.response());
+                return refresh;
+            }
+            AccessTokenResponse token = fetchTimer.recordCallable(() -> tokenClient.tokenManager().grantToken());
+            currentToken = new Token(token, System.nanoTime() + TimeUnit.SECONDS.toNanos(token.getExpiresIn()));
+            refresh.complete(token);
+        } catch (Exception ex) {
+            refreshFailures.increment();
+            refresh.completeExceptionally(ex);
+        } finally {
+            inFlight.set(null);
+        }
+        return refresh;
+    }
+
+    private void refreshAndReschedule() {
+        long delaySeconds;
+        try {
+            AccessTokenResponse token = refresh(true).join();
+            delaySeconds = Math.max(1, token.getExpiresIn() - refreshAhead.toSeconds());
+        } catch (RuntimeException ex) {
+            log.warn("Service account token refresh failed, retrying in {}: {}", retryDelay, ex.getMessage());
+            delaySeconds = Math.max(1, retryDelay.toSeconds());
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::refreshAndReschedule, delaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private double secondsUntilExpiry() {
+        Token token = currentToken;
+        return token == null ? 0 : Math.max(0, TimeUnit.NANOSECONDS.toSeconds(token.expiresAt() - System.nanoTime()));
+    }
+
+    private record Token(AccessTokenResponse response, long expiresAt) {
+        boolean expired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.itm.space.backendresources.configuration;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+
+/**
+ * Неблокирующий клиент админского REST API Кейклока для реактивного стека
+ * ({@code spring.main.web-application-type=reactive}).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = REACTIVE)
+public class KeycloakWebClientConfiguration {
+    @Value("${keycloak.auth-server-url}")
+    private String authUrl;
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak.client.http.max-connections-total:64}") //те же настройки пула, что и у блокирующего клиента
+    private int maxConnections;
+    @Value("${keycloak.client.http.connect-timeout:2s}")
+    private Duration connectTimeout;
+    @Value("${keycloak.client.http.read-timeout:5s}")
+    private Duration readTimeout;
+    @Value("${keycloak.client.http.pool-timeout:1s}")
+    private Duration poolTimeout;
+    @Value("${keycloak.client.http.keep-alive:30s}")
+    private Duration keepAlive;
+    @Value("${keycloak.client.http.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory(); //иначе при Tomcat в classpath реактивный стек поднимется на нем
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider keycloakConnectionProvider() {
+        return ConnectionProvider.builder("keycloak")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(poolTimeout)
+                .maxIdleTime(keepAlive)
+                .maxLifeTime(connectionTtl)
+                .evictInBackground(keepAlive)
+                .metrics(true) //reactor.netty.connection.provider.*
+                .build();
+    }
+
+    @Bean
+    public WebClient keycloakWebClient(WebClient.Builder webClientBuilder,
+                                       ConnectionProvider keycloakConnectionProvider,
+                                       KeycloakTokenProvider keycloakTokenProvider) {
+        HttpClient httpClient = HttpClient.create(keycloakConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        return webClientBuilder
+                .baseUrl(authUrl + "/admin/realms/" + realm)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(bearerToken(keycloakTokenProvider))
+                .build();
+    }
+
+    private static ExchangeFilterFunction bearerToken(KeycloakTokenProvider keycloakTokenProvider) {
+        return (request, next) -> {
+            String token = keycloakTokenProvider.getCachedAccessToken();
+            Mono<String> accessToken = token != null
+                    ? Mono.just(token)
+                    : Mono.fromCallable(keycloakTokenProvider::getAccessToken) //холодный старт: ждем токен не на event loop
+                    .subscribeOn(Schedulers.boundedElastic());
+            return accessToken.flatMap(value -> next.exchange(ClientRequest.from(request)
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + value)
+                    .build()));
+        };
+    }
+}
@@ -7,10 +7,12 @@ import io.swagger.v3.oas.annotations.security.OAuthFlows;
 import io.swagger.v3.oas.annotations.security.OAuthScope;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import io.swagger.v3.oas.models.OpenAPI;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "springdoc.api-docs.enabled", matchIfMissing = true) //в профиле prod документация выключена
 @SecurityScheme( //конфигурация для определелния схемы безопасности Эта конфигурация используется для аутентификации с помощью протокола OAuth 2.0.
         name = "oauth2_auth_code", // имя схемы безопасности как "oauth2_auth_code".
         type = SecuritySchemeType.OAUTH2, //тип схемы безопасности - OAuth 2.0.
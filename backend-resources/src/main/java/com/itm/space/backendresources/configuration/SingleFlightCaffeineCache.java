@@ -0,0 +1,79 @@
+package com.itm.space.backendresources.configuration;
+
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Кэш для {@code @Cacheable(sync = true)}, который загружает значение вне блокировки.
+ * Стандартный {@link CaffeineCache} вызывает загрузчик внутри {@code ConcurrentHashMap.compute}, то есть в synchronized:
+ * виртуальный поток, ждущий там ответа Кейклока, закрепляется на carrier-потоке.
+ * Здесь одновременные запросы одного ключа ждут общий {@link CompletableFuture}, загрузка по-прежнему одна.
+ * Вытеснение ключа во время загрузки побеждает: загруженное значение возвращается, но в кэш не попадает.
+ */
+class SingleFlightCaffeineCache extends CaffeineCache {
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    SingleFlightCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache,
+                              boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            try {
+                return (T) running.join();
+            } catch (CompletionException ex) {
+                throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+            }
+        }
+        try {
+            T value = valueLoader.call();
+            getNativeCache().asMap().compute(key, (k, current) -> //под блокировкой ключа, как и invalidate
+                    loading.remove(key, load) ? toStoreValue(value) : current);
+            load.complete(value);
+            return value;
+        } catch (Exception ex) {
+            load.completeExceptionally(ex);
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        loading.remove(key); //сначала загрузка, потом значение: иначе загрузка может положить его обратно
+        super.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        loading.remove(key);
+        return super.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        loading.clear();
+        super.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        loading.clear();
+        return super.invalidate();
+    }
+}
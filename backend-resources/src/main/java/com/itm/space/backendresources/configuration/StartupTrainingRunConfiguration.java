@@ -0,0 +1,34 @@
+package com.itm.space.backendresources.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.Keycloak;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Учебный запуск для CDS-архива (mvn -Pstartup): с {@code startup.training-run=true} приложение стартует,
+ * создает ленивый клиент Кейклока и завершается, а JVM сохраняет загруженные классы (-XX:ArchiveClassesAtExit).
+ * Свойство проверяется при событии, а не через @ConditionalOnProperty: условия AOT вычисляет еще при сборке.
+ */
+@Slf4j
+@Configuration
+public class StartupTrainingRunConfiguration {
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> trainingRunExit(Environment environment,
+                                                                      ObjectProvider<Keycloak> keycloak) {
+        return event -> {
+            if (!environment.getProperty("startup.training-run", Boolean.class, false)) {
+                return;
+            }
+            keycloak.getObject(); //классы RESTEasy тоже попадут в архив
+            log.info("Training run finished, exiting");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+}
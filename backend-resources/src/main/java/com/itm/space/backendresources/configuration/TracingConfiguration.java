@@ -0,0 +1,33 @@
+package com.itm.space.backendresources.configuration;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.boot.actuate.autoconfigure.tracing.ConditionalOnEnabledTracing;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Трассировка OpenTelemetry через Micrometer Tracing. Контекст приходит от шлюза в заголовке {@code traceparent} (W3C),
+ * спан запроса создает Spring Boot, дочерние спаны - проверка JWT ({@link JwtDecoderConfiguration}), вызовы Кейклока
+ * ({@code KeycloakCallTemplate}) и маппинг ({@code UserServiceImpl}). Доля трасс - {@code management.tracing.sampling.probability},
+ * решение шлюза наследуется. Спаны выгружаются локально, без коллектора: {@code tracing.exporter=log} - строка на спан,
+ * {@code otlp-json} - OTLP JSON, который можно отдать коллектору OpenTelemetry, {@code none} - не выгружаются.
+ */
+@Configuration
+@ConditionalOnEnabledTracing
+public class TracingConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "tracing.exporter", havingValue = "log", matchIfMissing = true)
+    public SpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "tracing.exporter", havingValue = "otlp-json")
+    public SpanExporter otlpJsonSpanExporter() {
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+}
@@ -0,0 +1,84 @@
+package com.itm.space.backendresources.controller;
+
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.service.ReactiveUserService;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+
+/**
+ * WebFlux-версия {@link UserController}; включается при {@code spring.main.web-application-type=reactive}.
+ * Пакетное создание, импорт и экспорт пока есть только в блокирующей версии.
+ */
+@RestController
+@RequestMapping("/api/users")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = REACTIVE)
+public class ReactiveUserController {
+    private final ReactiveUserService userService;
+
+    @Value("${users.http.max-age:5s}")
+    private Duration readMaxAge;
+
+    @PostMapping
+    @PreAuthorize("hasAuthority('ROLE_MODERATOR')")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public Mono<Void> create(@RequestBody @Valid UserRequest userRequest) {
+        return userService.createUser(userRequest);
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAuthority('ROLE_MODERATOR')")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public Mono<List<UserResponse>> getUsers(@RequestParam(required = false) String search,
+                                             @RequestParam(defaultValue = "0") int first,
+                                             @RequestParam(defaultValue = "20") int max,
+                                             ServerHttpResponse response) {
+        privateCache(response);
+        return userService.getUsers(search, first, max).collectList(); //ошибка по любому пользователю - до начала ответа, а не посреди массива
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAuthority('ROLE_MODERATOR')")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public Mono<UserResponse> getUserById(@PathVariable UUID id, ServerHttpResponse response) {
+        privateCache(response);
+        return userService.getUserById(id);
+    }
+
+    @GetMapping("/hello")
+    @PreAuthorize("hasAuthority('ROLE_MODERATOR')")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public Mono<String> hello() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getName);
+    }
+
+    private void privateCache(ServerHttpResponse response) { //как в UserController: вместо no-store от Spring Security
+        response.getHeaders().setCacheControl(CacheControl.maxAge(readMaxAge).cachePrivate());
+    }
+}
@@ -1,6 +1,8 @@
 package com.itm.space.backendresources.controller;
 
 import com.itm.space.backendresources.exception.BackendResourcesException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -19,6 +21,12 @@ public class RestExceptionHandler {
         return new ResponseEntity<>(backendResourcesException.getMessage(), backendResourcesException.getHttpStatus());
     }
 
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE) //    -  ,   
+    @ExceptionHandler({CallNotPermittedException.class, BulkheadFullException.class})
+    public String handleKeycloakUnavailable(RuntimeException ex) {
+        return ex.getMessage();
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST) //,      HTTP "BAD_REQUEST" (400)    .
     @ExceptionHandler(MethodArgumentNotValidException.class) //     MethodArgumentNotValidException.
     public Map<String, String> handleInvalidArgument(MethodArgumentNotValidException ex) { //   handleInvalidArgument,    MethodArgumentNotValidException       Map<String, String>.       MethodArgumentNotValidException.
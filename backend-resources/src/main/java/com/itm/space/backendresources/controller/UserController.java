@@ -1,11 +1,24 @@
 package com.itm.space.backendresources.controller;
 
+import com.itm.space.backendresources.api.request.UserField;
 import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.ProvisioningJobResponse;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
 import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.service.UserExportService;
+import com.itm.space.backendresources.service.UserImportService;
+import com.itm.space.backendresources.service.UserProvisioningQueue;
 import com.itm.space.backendresources.service.UserService;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -13,30 +26,114 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
 @RestController
 @RequestMapping("/api/users")
+@ConditionalOnWebApplication(type = SERVLET)
 @RequiredArgsConstructor  //Эта аннотация создает конструктор, который принимает все final поля класса в качестве параметров. В данном случае, создается конструктор, который принимает объект UserService в качестве параметра.
 public class UserController {
+    private static final String RESPOND_ASYNC = "respond-async";
+
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final UserExportService userExportService;
+    private final UserProvisioningQueue userProvisioningQueue;
+
+    @Value("${users.http.max-age:5s}") //сколько шлюз и браузер могут хранить ответ о пользователях
+    private Duration readMaxAge;
 
     @PostMapping
     @Secured("ROLE_MODERATOR")
     @SecurityRequirement(name = "oauth2_auth_code")
-    public void create(@RequestBody @Valid UserRequest userRequest) {
-        userService.createUser(userRequest);
+    public ResponseEntity<ProvisioningJobResponse> create(@RequestBody @Valid UserRequest userRequest,
+                                                          @RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (prefer == null || !prefer.contains(RESPOND_ASYNC)) {
+            userService.createUser(userRequest);
+            return ResponseEntity.ok().build();
+        }
+        ProvisioningJobResponse job = userProvisioningQueue.submit(userRequest); //Prefer: respond-async - 202 и номер задачи
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/users/jobs/" + job.getId()))
+                .header("Preference-Applied", RESPOND_ASYNC)
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    @Secured("ROLE_MODERATOR")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public ProvisioningJobResponse getJob(@PathVariable UUID id) {
+        return userProvisioningQueue.getJob(id);
+    }
+
+    @PostMapping("/batch")
+    @Secured("ROLE_MODERATOR")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public List<UserCreationResponse> createBatch(@RequestBody List<UserRequest> userRequests) {
+        return userService.createUsers(userRequests); //каждый элемент валидируется в сервисе, результат возвращается по каждому
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Secured("ROLE_MODERATOR")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public void importUsers(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE); //результаты пишутся построчно по мере создания пользователей
+        userImportService.importUsers(body, response.getOutputStream());
+    }
+
+    @GetMapping
+    @Secured("ROLE_MODERATOR")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public List<UserResponse> getUsers(@RequestParam(required = false) String search,
+                                       @RequestParam(defaultValue = "0") int first,
+                                       @RequestParam(defaultValue = "20") int max,
+                                       @RequestParam(required = false) String fields,
+                                       WebRequest request, HttpServletResponse response) {
+        Set<UserField> projection = UserField.parse(fields);
+        List<UserResponse> users = userService.getUsers(search, first, max, projection != null ? projection : UserField.ALL);
+        privateCache(response);
+        return request.checkNotModified(eTag(users)) ? null : users;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Secured("ROLE_MODERATOR")
+    @SecurityRequirement(name = "oauth2_auth_code")
+    public void exportUsers(@RequestParam(required = false) String search,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE); //выгрузка идет постранично, весь список в памяти не держится
+        userExportService.exportUsers(search, response.getOutputStream());
     }
 
     @GetMapping("/{id}")
     @Secured("ROLE_MODERATOR")
     @SecurityRequirement(name = "oauth2_auth_code")
-    public UserResponse getUserById(@PathVariable UUID id) {
-        return userService.getUserById(id);
+    public UserResponse getUserById(@PathVariable UUID id,
+                                    @RequestParam(required = false) String fields, //например fields=email,roles
+                                    WebRequest request, HttpServletResponse response) {
+        Set<UserField> projection = UserField.parse(fields);
+        UserResponse user = projection == null ? userService.getUserById(id) : userService.getUserById(id, projection);
+        privateCache(response);
+        return request.checkNotModified(eTag(List.of(user))) ? null : user; //совпал If-None-Match - 304 без тела
     }
 
     @GetMapping("/hello")
@@ -45,4 +142,56 @@ public class UserController {
     public String hello() {
         return SecurityContextHolder.getContext().getAuthentication().getName(); // Возвращается имя аутентифицированного пользователя
     }
+
+    /**
+     * Заменяет {@code no-store} от Spring Security (он не пишет Cache-Control, если заголовок уже есть):
+     * ответ может хранить только кэш этого пользователя - кэш шлюза ведется по subject токена.
+     */
+    private void privateCache(HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(readMaxAge).cachePrivate().getHeaderValue());
+    }
+
+    /**
+     * ETag по содержимому ответа, а не по времени изменения. Считается по полям {@link UserResponse},
+     * без лишней сериализации: тело и так сериализует конвертер. Слабый - один на JSON, CBOR и Smile.
+     */
+    private static String eTag(List<UserResponse> users) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (UserResponse user : users) {
+            update(digest, user.getFirstName());
+            update(digest, user.getLastName());
+            update(digest, user.getEmail());
+            update(digest, user.getRoles());
+            update(digest, user.getGroups());
+        }
+        return "W/\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
+    private static void update(MessageDigest digest, List<String> values) {
+        if (values == null) {
+            digest.update(length(-1));
+            return;
+        }
+        digest.update(length(values.size()));
+        values.forEach(value -> update(digest, value));
+    }
+
+    private static void update(MessageDigest digest, String value) { //длина перед значением - границы полей однозначны
+        if (value == null) {
+            digest.update(length(-1));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(length(bytes.length));
+        digest.update(bytes);
+    }
+
+    private static byte[] length(int length) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(length).array();
+    }
 }
@@ -1,6 +1,8 @@
 package com.itm.space.backendresources.mapper;
 
+import com.itm.space.backendresources.api.request.UserRequest;
 import com.itm.space.backendresources.api.response.UserResponse;
+import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
@@ -22,6 +24,21 @@ public interface UserMapper {
                                                   List<RoleRepresentation> roleList,
                                                   List<GroupRepresentation> groupList);
 
+    default UserRepresentation userRequestToUserRepresentation(UserRequest userRequest) { //новый пользователь Кейклока с постоянным паролем
+        CredentialRepresentation password = new CredentialRepresentation();
+        password.setTemporary(false);
+        password.setType(CredentialRepresentation.PASSWORD);
+        password.setValue(userRequest.getPassword());
+        UserRepresentation newUser = new UserRepresentation();
+        newUser.setUsername(userRequest.getUsername());
+        newUser.setEmail(userRequest.getEmail());
+        newUser.setCredentials(List.of(password));
+        newUser.setEnabled(true);
+        newUser.setFirstName(userRequest.getFirstName());
+        newUser.setLastName(userRequest.getLastName());
+        return newUser;
+    }
+
     @Named("mapRoleRepresentationToString") //указывает, что метод mapRoleRepresentationToString будет использоваться для преобразования списка RoleRepresentation в список строк.
     default List<String> mapRoleRepresentationToString(List<RoleRepresentation> roleList) {
         return roleList.stream().map(RoleRepresentation::getName).toList(); //Это объявление метода mapRoleRepresentationToString, который принимает список объектов RoleRepresentation
@@ -0,0 +1,65 @@
+package com.itm.space.backendresources.service;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничивает число одновременно выполняемых задач поверх общего пула.
+ * Вызывающий поток ждет свободный слот, но не дольше общего дедлайна, поэтому очередь пула не переполняется.
+ * {@code cancel(true)} у возвращенной задачи прерывает поток пула, на котором она выполняется; слот освобождается,
+ * только когда поток действительно выйдет из задачи (прерванное чтение RESTEasy может длиться до read-timeout).
+ */
+class BoundedExecutor {
+    private final AsyncTaskExecutor executor;
+    private final Semaphore permits;
+
+    BoundedExecutor(AsyncTaskExecutor executor, int maxInFlight) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @param deadline момент по {@link System#nanoTime()}, после которого слот уже не ждем
+     * @throws TimeoutException слот не освободился до дедлайна, задача не отправлена
+     */
+    <T> Future<T> submit(Callable<T> task, long deadline) throws InterruptedException, TimeoutException {
+        if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("No free slot before deadline");
+        }
+        AtomicBoolean started = new AtomicBoolean(); //слот освобождает либо run, либо отмена до старта - ровно один раз
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            public void run() {
+                if (!started.compareAndSet(false, true)) {
+                    return; //отменена до того, как пул ее взял
+                }
+                try {
+                    super.run();
+                } finally {
+                    permits.release();
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (started.compareAndSet(false, true)) { //отмена задачи, еще не взятой пулом
+                    permits.release();
+                }
+            }
+        };
+        try {
+            executor.execute(future);
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+        return future;
+    }
+}
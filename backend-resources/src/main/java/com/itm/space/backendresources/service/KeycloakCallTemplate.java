@@ -0,0 +1,155 @@
+package com.itm.space.backendresources.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.retry.RetryOperator;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import javax.ws.rs.WebApplicationException;
+import java.util.function.Supplier;
+
+/**
+ * Единая точка вызова админского API Кейклока.
+ * Каждый вызов проходит через circuit breaker и bulkhead и замеряется таймером {@code keycloak.client.requests}
+ * с тегами operation, outcome, status и exception. Повторяются только идемпотентные вызовы.
+ * Блокирующие вызовы RESTEasy и реактивные вызовы WebClient защищаются одними и теми же bulkhead и breaker-ом.
+ * При включенной трассировке на каждый вызов, вместе с повторами, создается спан {@code keycloak <operation>}.
+ */
+@Component
+@RequiredArgsConstructor
+public class KeycloakCallTemplate {
+    static final String METRIC_NAME = "keycloak.client.requests";
+    static final String SKIPPED_METRIC_NAME = "keycloak.client.requests.skipped";
+    private static final Tags SUCCESS = Tags.of("outcome", "SUCCESS", "status", "2xx", "exception", "none");
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker keycloakCircuitBreaker;
+    private final Bulkhead keycloakBulkhead;
+    private final Retry keycloakRetry;
+    private final ObjectProvider<Tracer> tracer; //трассировка выключена - спаны не создаются
+
+    /**
+     * Идемпотентный вызов: при 5xx и сетевых ошибках повторяется с экспоненциальной задержкой и джиттером.
+     */
+    public <T> T execute(String operation, Supplier<T> call) {
+        return timed(operation, Retry.decorateSupplier(keycloakRetry, protect(call)));
+    }
+
+    /**
+     * Неидемпотентный вызов (создание пользователя) - выполняется не больше одного раза.
+     */
+    public <T> T executeOnce(String operation, Supplier<T> call) {
+        return timed(operation, protect(call));
+    }
+
+    /**
+     * Реактивный вариант {@link #execute(String, Supplier)}: повтор - это повторная подписка на {@code call}.
+     */
+    public <T> Mono<T> execute(String operation, Mono<T> call) {
+        return timed(operation, protect(call).transformDeferred(RetryOperator.of(keycloakRetry)));
+    }
+
+    public <T> Mono<T> executeOnce(String operation, Mono<T> call) {
+        return timed(operation, protect(call));
+    }
+
+    /**
+     * Вызов не понадобился (поле не запрошено) - считается в {@code keycloak.client.requests.skipped}.
+     */
+    public void skipped(String operation) {
+        Counter.builder(SKIPPED_METRIC_NAME)
+                .description("Keycloak admin client calls skipped because their data was not requested")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public static boolean isRejected(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
+
+    private <T> Supplier<T> protect(Supplier<T> call) {
+        return CircuitBreaker.decorateSupplier(keycloakCircuitBreaker, Bulkhead.decorateSupplier(keycloakBulkhead, call));
+    }
+
+    private <T> Mono<T> protect(Mono<T> call) {
+        return call.transformDeferred(BulkheadOperator.of(keycloakBulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(keycloakCircuitBreaker));
+    }
+
+    private Tracer tracer() {
+        return tracer.getIfAvailable(() -> Tracer.NOOP);
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Tracer tracer = tracer();
+        Span span = tracer.nextSpan().name("keycloak " + operation).start();
+        Tags tags = SUCCESS;
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            return call.get();
+        } catch (RuntimeException ex) {
+            tags = errorTags(ex);
+            span.error(ex);
+            throw ex;
+        } finally {
+            stop(sample, span, operation, tags);
+        }
+    }
+
+    private <T> Mono<T> timed(String operation, Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            Span span;
+            //в WebFlux спан запроса лежит в контексте Reactor, а не в потоке
+            try (ContextSnapshot.Scope ignored = CONTEXT_SNAPSHOTS.setThreadLocalsFrom(context, ObservationThreadLocalAccessor.KEY)) {
+                span = tracer().nextSpan().name("keycloak " + operation).start();
+            }
+            return call.doOnSuccess(result -> stop(sample, span, operation, SUCCESS))
+                    .doOnError(ex -> stop(sample, span.error(ex), operation, errorTags(ex)))
+                    .doOnCancel(span::end);
+        });
+    }
+
+    private void stop(Timer.Sample sample, Span span, String operation, Tags tags) {
+        sample.stop(Timer.builder(METRIC_NAME)
+                .description("Keycloak admin client calls")
+                .tag("operation", operation)
+                .tags(tags)
+                .register(meterRegistry));
+        span.tag("operation", operation);
+        tags.forEach(tag -> span.tag(tag.getKey(), tag.getValue()));
+        span.end();
+    }
+
+    private static Tags errorTags(Throwable ex) {
+        int status = ex instanceof WebApplicationException webApplicationException
+                ? webApplicationException.getResponse().getStatus()
+                : ex instanceof WebClientResponseException responseException ? responseException.getStatusCode().value() : 0;
+        if (status > 0) {
+            return Tags.of("outcome", status >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR",
+                    "status", String.valueOf(status), "exception", ex.getClass().getSimpleName());
+        }
+        return Tags.of("outcome", isRejected(ex) ? "REJECTED" : "UNKNOWN",
+                "status", "NONE", "exception", ex.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,18 @@
+package com.itm.space.backendresources.service;
+
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+public interface ReactiveUserService {
+
+    Mono<Void> createUser(UserRequest userRequest);
+
+    Mono<UserResponse> getUserById(UUID id);
+
+    Flux<UserResponse> getUsers(String search, int first, int max);
+
+}
@@ -0,0 +1,142 @@
+package com.itm.space.backendresources.service;
+
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.exception.BackendResourcesException;
+import com.itm.space.backendresources.mapper.UserMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.MappingsRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+
+/**
+ * Неблокирующая реализация поверх админского REST API Кейклока: ни один поток не ждет ответа,
+ * поэтому число потоков не растет вместе с числом одновременных запросов.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = REACTIVE)
+public class ReactiveUserServiceImpl implements ReactiveUserService {
+    private final WebClient keycloakWebClient;
+    private final KeycloakCallTemplate keycloakCalls;
+    private final UserMapper userMapper;
+
+    @Value("${keycloak.client.call-timeout:5s}")
+    private Duration callTimeout;
+    @Value("${users.list.concurrency:8}")
+    private int pageConcurrency;
+    @Value("${users.list.max-page-size:100}")
+    private int maxPageSize;
+
+    @Override
+    public Mono<Void> createUser(UserRequest userRequest) {
+        UserRepresentation user = userMapper.userRequestToUserRepresentation(userRequest);
+        return keycloakCalls.executeOnce("create", keycloakWebClient.post()
+                        .uri("/users")
+                        .bodyValue(user)
+                        .retrieve()
+                        .toBodilessEntity())
+                .doOnNext(response -> log.info("Created UserId: {}", createdId(response)))
+                .timeout(callTimeout)
+                .onErrorMap(ex -> translate("createUser", ex))
+                .then();
+    }
+
+    @Override
+    public Mono<UserResponse> getUserById(UUID id) {
+        String userId = String.valueOf(id);
+        Mono<UserRepresentation> user = keycloakCalls.execute("toRepresentation", keycloakWebClient.get()
+                .uri("/users/{id}", userId)
+                .retrieve()
+                .bodyToMono(UserRepresentation.class));
+        return Mono.zip(user, fetchRealmRoles(userId), fetchGroups(userId)) //три вызова идут параллельно
+                .map(tuple -> userMapper.userRepresentationToUserResponse(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+                .timeout(callTimeout)
+                .onErrorMap(ex -> translate("getUserById", ex));
+    }
+
+    @Override
+    public Flux<UserResponse> getUsers(String search, int first, int max) {
+        int pageSize = Math.max(1, Math.min(max, maxPageSize));
+        boolean searching = search != null && !search.isBlank();
+        Mono<List<UserRepresentation>> page = keycloakCalls.execute(searching ? "search" : "list", keycloakWebClient.get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/users")
+                            .queryParam("first", Math.max(first, 0))
+                            .queryParam("max", pageSize);
+                    return searching ? uriBuilder.queryParam("search", search).build() : uriBuilder.build();
+                })
+                .retrieve()
+                .bodyToFlux(UserRepresentation.class)
+                .collectList());
+        return page.flatMapIterable(users -> users)
+                .flatMapSequential(user -> Mono.zip(fetchRealmRoles(user.getId()), fetchGroups(user.getId()))
+                        .map(tuple -> userMapper.userRepresentationToUserResponse(user, tuple.getT1(), tuple.getT2())),
+                        pageConcurrency)
+                .collectList()
+                .timeout(callTimeout) //срок на всю страницу, а не на паузу между пользователями
+                .onErrorMap(ex -> translate("getUsers", ex))
+                .flatMapIterable(users -> users);
+    }
+
+    private Mono<List<RoleRepresentation>> fetchRealmRoles(String userId) {
+        return keycloakCalls.execute("roleMappings", keycloakWebClient.get()
+                .uri("/users/{id}/role-mappings", userId)
+                .retrieve()
+                .bodyToMono(MappingsRepresentation.class)
+                .map(mappings -> mappings.getRealmMappings() != null ? mappings.getRealmMappings() : List.of()));
+    }
+
+    private Mono<List<GroupRepresentation>> fetchGroups(String userId) {
+        return keycloakCalls.execute("groups", keycloakWebClient.get()
+                .uri("/users/{id}/groups", userId)
+                .retrieve()
+                .bodyToFlux(GroupRepresentation.class)
+                .collectList());
+    }
+
+    private static String createdId(ResponseEntity<Void> response) {
+        URI location = response.getHeaders().getLocation();
+        if (location == null) {
+            return null;
+        }
+        String path = location.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private Throwable translate(String method, Throwable ex) {
+        if (ex instanceof BackendResourcesException || KeycloakCallTemplate.isRejected(ex)) {
+            return ex;
+        }
+        if (ex instanceof TimeoutException) {
+            log.error("Timeout on \"{}\" after {}", method, callTimeout);
+            return new BackendResourcesException("Keycloak call timed out", HttpStatus.GATEWAY_TIMEOUT);
+        }
+        log.error("Exception on \"{}\": ", method, ex);
+        if (ex instanceof WebClientResponseException responseException) {
+            HttpStatus status = HttpStatus.resolve(responseException.getStatusCode().value());
+            return new BackendResourcesException(ex.getMessage(), status != null ? status : HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new BackendResourcesException(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
@@ -0,0 +1,44 @@
+package com.itm.space.backendresources.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itm.space.backendresources.api.response.UserResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Потоковая выгрузка пользователей в NDJSON.
+ * Пользователи запрашиваются у Кейклока страницами по {@code users.list.max-page-size} и сразу пишутся в ответ.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserExportService {
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${users.list.max-page-size:100}")
+    private int pageSize;
+
+    public void exportUsers(String search, OutputStream out) throws IOException {
+        int first = 0;
+        List<UserResponse> page;
+        do {
+            page = userService.getUsers(search, first, pageSize);
+            for (UserResponse user : page) {
+                out.write(objectMapper.writeValueAsBytes(user));
+                out.write(NEW_LINE);
+            }
+            out.flush();
+            first += page.size();
+        } while (page.size() == pageSize);
+        log.info("Exported {} users", first);
+    }
+}
@@ -0,0 +1,149 @@
+package com.itm.space.backendresources.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Потоковый импорт пользователей из NDJSON.
+ * Строки читаются по одной, в работе держится не больше {@code users.import.max-in-flight} записей:
+ * пока самая старая не записана в ответ, следующая строка не читается.
+ * Строка длиннее {@code users.import.max-line-length} символов не держится в памяти и получает ответ 400.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserImportService {
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final UserService userService;
+    private final AsyncTaskExecutor keycloakExecutor;
+    private final ObjectMapper objectMapper;
+
+    @Value("${users.import.max-in-flight:8}")
+    private int maxInFlight;
+    @Value("${users.import.max-line-length:65536}")
+    private int maxLineLength;
+
+    public void importUsers(InputStream in, OutputStream out) throws IOException {
+        ObjectReader userRequestReader = objectMapper.readerFor(UserRequest.class);
+        Deque<CompletableFuture<UserCreationResponse>> inFlight = new ArrayDeque<>(maxInFlight);
+        LineReader reader = new LineReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), maxLineLength);
+        long lineNumber = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (reader.isTruncated()) {
+                    inFlight.add(CompletableFuture.completedFuture(UserCreationResponse.failed(null, HttpStatus.BAD_REQUEST.value(),
+                            "Record at line " + lineNumber + " exceeds " + maxLineLength + " characters")));
+                } else if (!line.isBlank()) {
+                    inFlight.add(submit(userRequestReader, line, lineNumber));
+                }
+                if (inFlight.size() >= maxInFlight) {
+                    write(out, inFlight.poll());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                write(out, inFlight.poll());
+            }
+        } finally {
+            inFlight.forEach(result -> result.cancel(true));
+        }
+        log.info("Imported {} NDJSON lines", lineNumber);
+    }
+
+    private CompletableFuture<UserCreationResponse> submit(ObjectReader userRequestReader, String line, long lineNumber) {
+        UserRequest userRequest;
+        try {
+            userRequest = userRequestReader.readValue(line);
+        } catch (JsonProcessingException ex) {
+            return CompletableFuture.completedFuture(UserCreationResponse.failed(null,
+                    HttpStatus.BAD_REQUEST.value(), "Malformed record at line " + lineNumber));
+        }
+        if (userRequest == null) { //строка "null"
+            return CompletableFuture.completedFuture(UserCreationResponse.failed(null,
+                    HttpStatus.BAD_REQUEST.value(), "Empty record at line " + lineNumber));
+        }
+        try {
+            return keycloakExecutor.submitCompletable(() -> userService.tryCreateUser(userRequest));
+        } catch (TaskRejectedException ex) {
+            return CompletableFuture.completedFuture(UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.SERVICE_UNAVAILABLE.value(), "Keycloak executor is saturated"));
+        }
+    }
+
+    private void write(OutputStream out, CompletableFuture<UserCreationResponse> result) throws IOException {
+        UserCreationResponse response;
+        try {
+            response = result.join();
+        } catch (CompletionException ex) { //ошибка одной записи не обрывает поток ответа
+            log.error("Exception on \"importUsers\": ", ex.getCause());
+            response = UserCreationResponse.failed(null, HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getCause().getMessage());
+        }
+        out.write(objectMapper.writeValueAsBytes(response));
+        out.write(NEW_LINE);
+        out.flush();
+    }
+
+    /**
+     * Как {@link BufferedReader#readLine()}, но хранит не больше {@code maxLength} символов строки:
+     * остаток длинной строки пропускается, а {@link #isTruncated()} возвращает true.
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final int maxLength;
+        private final StringBuilder line = new StringBuilder();
+        private boolean truncated;
+
+        private LineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+            truncated = false;
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            for (; c != -1 && c != '\n'; c = reader.read()) {
+                if (line.length() < maxLength) {
+                    line.append((char) c);
+                } else {
+                    truncated = true;
+                }
+            }
+            if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+                line.setLength(line.length() - 1);
+            }
+            return line.toString();
+        }
+
+        private boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.itm.space.backendresources.service;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.service.UserIndexSnapshot.Entry;
+import com.itm.space.backendresources.service.UserIndexSnapshot.NameTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RealmEventsConfigRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.NotFoundException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Локальная копия пользователей реалма с именами ролей и групп для чтения без похода в Кейклок.
+ * После старта индекс загружается постранично (пользователи, участники ролей и групп), затем раз в
+ * {@code users.index.poll-interval} читает admin- и user-события Кейклока и перечитывает затронутых пользователей.
+ * Переименование или удаление роли или группы вызывает полную перезагрузку, она же выполняется раз в
+ * {@code users.index.full-reload-interval}. Пока индекс не загружен или отстал больше чем на {@code users.index.max-lag},
+ * чтения идут в Кейклок. В Кейклоке должны быть включены события (Events -> Save events, Save admin events).
+ * Все изменения выполняет один поток, читатели получают неизменяемый снимок {@link UserIndexSnapshot}.
+ */
+@Slf4j
+@Component
+public class UserIndex implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    private static final Pattern USER_PATH = Pattern.compile("^users/([0-9a-fA-F-]{36})(/.*)?$");
+    private static final Set<String> USER_RESOURCES = Set.of("USER", "REALM_ROLE_MAPPING", "GROUP_MEMBERSHIP");
+    private static final Set<String> RELOAD_RESOURCES = Set.of("REALM_ROLE", "GROUP");
+    private static final List<String> USER_EVENT_TYPES = List.of("REGISTER", "UPDATE_PROFILE", "UPDATE_EMAIL", "DELETE_ACCOUNT");
+
+    private final ObjectProvider<Keycloak> keycloak;
+    private final KeycloakCallTemplate keycloakCalls;
+    private final NameTable names = new NameTable();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "users-index-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Long> seenEvents = new HashMap<>(); //события из перекрытия окна, которые уже применены
+    private final Timer fullLoadSuccess;
+    private final Timer fullLoadFailure;
+    private final Timer pollSuccess;
+    private final Timer pollFailure;
+    private final Timer eventLag;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    @Value("${users.index.enabled:false}")
+    private boolean enabled;
+    @Value("${keycloak.realm}")
+    private String realm;
+    @Value("${users.index.page-size:500}")
+    private int pageSize;
+    @Value("${users.index.poll-interval:5s}")
+    private Duration pollInterval;
+    @Value("${users.index.full-reload-interval:6h}")
+    private Duration fullReloadInterval;
+    @Value("${users.index.max-lag:30s}") //индекс, не синхронизированный дольше, не используется для чтения
+    private Duration maxLag;
+    @Value("${users.index.event-overlap:5s}") //события могут записаться с меткой времени раньше уже прочитанных
+    private Duration eventOverlap;
+    @Value("${users.index.retry-delay:10s}")
+    private Duration retryDelay;
+
+    private volatile UserIndexSnapshot snapshot;
+    private volatile long lastSyncAt;
+    private volatile boolean reloadRequested = true;
+    private long lastFullLoadAt;
+    private long eventCursor;
+
+    public UserIndex(ObjectProvider<Keycloak> keycloak, KeycloakCallTemplate keycloakCalls, MeterRegistry meterRegistry) {
+        this.keycloak = keycloak;
+        this.keycloakCalls = keycloakCalls;
+        this.fullLoadSuccess = syncTimer(meterRegistry, "full", "success");
+        this.fullLoadFailure = syncTimer(meterRegistry, "full", "failure");
+        this.pollSuccess = syncTimer(meterRegistry, "incremental", "success");
+        this.pollFailure = syncTimer(meterRegistry, "incremental", "failure");
+        this.eventLag = Timer.builder("users.index.event.lag")
+                .description("Time from a Keycloak event to its application to the user index")
+                .register(meterRegistry);
+        this.hits = readCounter(meterRegistry, "hit");
+        this.misses = readCounter(meterRegistry, "miss");
+        this.bypasses = readCounter(meterRegistry, "bypass");
+        Gauge.builder("users.index.size", this, index -> index.snapshot == null ? 0 : index.snapshot.size())
+                .description("Users in the local index")
+                .register(meterRegistry);
+        Gauge.builder("users.index.staleness", this, UserIndex::stalenessSeconds)
+                .description("Time since the user index was last synchronized with Keycloak")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (enabled) {
+            scheduler.execute(this::syncAndReschedule);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Можно ли сейчас отвечать из индекса: он загружен и синхронизирован не раньше, чем {@code max-lag} назад.
+     */
+    public boolean isServing() {
+        return enabled && snapshot != null && System.currentTimeMillis() - lastSyncAt <= maxLag.toMillis();
+    }
+
+    /**
+     * Пользователь из индекса или null, если индекс не готов или пользователя в нем еще нет - тогда нужен Кейклок.
+     */
+    public UserResponse findById(UUID id) {
+        UserIndexSnapshot current = servingSnapshot();
+        if (current == null) {
+            bypasses.increment();
+            return null;
+        }
+        Entry entry = current.byId(id);
+        (entry == null ? misses : hits).increment();
+        return entry == null ? null : current.toResponse(entry);
+    }
+
+    /**
+     * Страница пользователей из индекса или null, если индекс не готов.
+     */
+    public List<UserResponse> findUsers(String search, int first, int max) {
+        UserIndexSnapshot current = servingSnapshot();
+        if (current == null) {
+            bypasses.increment();
+            return null;
+        }
+        hits.increment();
+        return current.page(search, first, max).stream().map(current::toResponse).toList();
+    }
+
+    /**
+     * Перечитать пользователя вне очереди, например сразу после создания через этот сервис.
+     */
+    public void refresh(String userId) {
+        if (enabled && !scheduler.isShutdown()) {
+            scheduler.execute(() -> {
+                try {
+                    applyUsers(Set.of(userId));
+                } catch (RuntimeException ex) {
+                    log.warn("User index refresh of {} failed, waiting for the next poll: {}", userId, ex.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Один шаг синхронизации: полная загрузка, если она нужна, иначе чтение новых событий.
+     * Вызывается потоком синхронизации, снаружи - только в тестах.
+     */
+    public void sync() {
+        if (reloadRequested || System.currentTimeMillis() - lastFullLoadAt >= fullReloadInterval.toMillis()) {
+            loadAll();
+        } else {
+            poll();
+        }
+        lastSyncAt = System.currentTimeMillis();
+    }
+
+    private void syncAndReschedule() {
+        Duration delay = pollInterval;
+        try {
+            sync();
+        } catch (RuntimeException ex) {
+            log.warn("User index sync failed, retrying in {}: {}", retryDelay, ex.getMessage());
+            delay = retryDelay;
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::syncAndReschedule, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void loadAll() {
+        long start = System.nanoTime();
+        long startedAt = System.currentTimeMillis();
+        try {
+            RealmResource realmResource = keycloak.getObject().realm(realm);
+            if (snapshot == null) {
+                warnIfEventsDisabled(realmResource);
+            }
+            Map<String, List<String>> roles = new HashMap<>();
+            for (RoleRepresentation role : keycloakCalls.execute("indexRoles", () -> realmResource.roles().list())) {
+                forEachPage("indexRoleMembers", (first, max) -> new ArrayList<>(realmResource.roles().get(role.getName())
+                                .getRoleUserMembers(first, max)),
+                        member -> roles.computeIfAbsent(member.getId(), id -> new ArrayList<>()).add(role.getName()));
+            }
+            Map<String, List<String>> groups = new HashMap<>();
+            for (GroupRepresentation group : flatten(keycloakCalls.execute("indexGroups", () -> realmResource.groups().groups()))) {
+                forEachPage("indexGroupMembers", (first, max) -> realmResource.groups().group(group.getId()).members(first, max),
+                        member -> groups.computeIfAbsent(member.getId(), id -> new ArrayList<>()).add(group.getName()));
+            }
+            List<Entry> entries = new ArrayList<>();
+            forEachPage("indexUsers", (first, max) -> realmResource.users().list(first, max),
+                    user -> entries.add(entry(user, roles.getOrDefault(user.getId(), List.of()),
+                            groups.getOrDefault(user.getId(), List.of()))));
+            snapshot = UserIndexSnapshot.of(names, entries);
+            lastFullLoadAt = startedAt;
+            eventCursor = startedAt - eventOverlap.toMillis(); //изменения во время загрузки догонят события
+            seenEvents.clear();
+            reloadRequested = false;
+            fullLoadSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("User index loaded: {} users, {} role and group names in {} ms", entries.size(), names.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException ex) {
+            fullLoadFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
+    }
+
+    private void poll() {
+        long start = System.nanoTime();
+        try {
+            RealmResource realmResource = keycloak.getObject().realm(realm);
+            long cursor = eventCursor;
+            String dateFrom = LocalDate.ofInstant(Instant.ofEpochMilli(cursor), ZoneOffset.UTC).minusDays(1).toString(); //Кейклок фильтрует только по дате
+            Set<String> touched = new LinkedHashSet<>();
+            List<Long> eventTimes = new ArrayList<>();
+            forEachNewEvent("adminEvents", cursor, (first, max) -> realmResource.getAdminEvents(null, null, null, null, null,
+                    null, dateFrom, null, first, max), AdminEventRepresentation::getTime, event -> {
+                String key = event.getTime() + " " + event.getOperationType() + " " + event.getResourcePath();
+                if (seenEvents.putIfAbsent(key, event.getTime()) != null) {
+                    return;
+                }
+                eventTimes.add(event.getTime());
+                if (RELOAD_RESOURCES.contains(event.getResourceType()) && !"CREATE".equals(event.getOperationType())) {
+                    reloadRequested = true; //имя роли или группы могло измениться у всех пользователей сразу
+                } else if (USER_RESOURCES.contains(event.getResourceType()) && event.getResourcePath() != null) {
+                    Matcher matcher = USER_PATH.matcher(event.getResourcePath());
+                    if (matcher.matches()) {
+                        touched.add(matcher.group(1));
+                    }
+                }
+            });
+            forEachNewEvent("userEvents", cursor, (first, max) -> realmResource.getEvents(USER_EVENT_TYPES, null, null,
+                    dateFrom, null, null, first, max), EventRepresentation::getTime, event -> {
+                String key = event.getTime() + " " + event.getType() + " " + event.getUserId();
+                if (event.getUserId() != null && seenEvents.putIfAbsent(key, event.getTime()) == null) {
+                    eventTimes.add(event.getTime());
+                    touched.add(event.getUserId());
+                }
+            });
+
+            if (reloadRequested) {
+                loadAll();
+                return;
+            }
+            applyUsers(touched);
+            long appliedAt = System.currentTimeMillis();
+            eventTimes.forEach(time -> eventLag.record(Math.max(0, appliedAt - time), TimeUnit.MILLISECONDS));
+            long newest = eventTimes.stream().mapToLong(Long::longValue).max().orElse(cursor + eventOverlap.toMillis());
+            eventCursor = Math.max(cursor, Math.min(newest, appliedAt) - eventOverlap.toMillis());
+            seenEvents.values().removeIf(time -> time < eventCursor);
+            pollSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException ex) {
+            pollFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
+    }
+
+    private void applyUsers(Collection<String> userIds) {
+        if (userIds.isEmpty() || snapshot == null) {
+            return;
+        }
+        RealmResource realmResource = keycloak.getObject().realm(realm);
+        Map<UUID, Entry> upserts = new HashMap<>();
+        Set<UUID> removals = new HashSet<>();
+        for (String userId : userIds) {
+            UserResource userResource = realmResource.users().get(userId);
+            try {
+                UserRepresentation user = keycloakCalls.execute("indexUser", userResource::toRepresentation);
+                List<String> roles = keycloakCalls.execute("indexUserRoles", () -> userResource.roles().getAll().getRealmMappings())
+                        .stream().map(RoleRepresentation::getName).toList();
+                List<String> groups = keycloakCalls.execute("indexUserGroups", userResource::groups)
+                        .stream().map(GroupRepresentation::getName).toList();
+                upserts.put(UUID.fromString(userId), entry(user, roles, groups));
+            } catch (NotFoundException ex) {
+                removals.add(UUID.fromString(userId)); //пользователь удален
+            }
+        }
+        snapshot = snapshot.with(upserts, removals);
+    }
+
+    private UserIndexSnapshot servingSnapshot() {
+        return isServing() ? snapshot : null;
+    }
+
+    private Entry entry(UserRepresentation user, List<String> roles, List<String> groups) {
+        return Entry.of(UUID.fromString(user.getId()), user.getUsername(), user.getEmail(), user.getFirstName(),
+                user.getLastName(), names.intern(roles), names.intern(groups));
+    }
+
+    private <T> void forEachPage(String operation, Page<T> page, Consumer<T> action) {
+        for (int first = 0; ; first += pageSize) {
+            int offset = first;
+            List<T> items = keycloakCalls.execute(operation, () -> page.fetch(offset, pageSize));
+            items.forEach(action);
+            if (items.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Кейклок отдает события от новых к старым: читаем страницы, пока не дойдем до уже обработанного времени.
+     */
+    private <T> void forEachNewEvent(String operation, long cursor, Page<T> page, ToLongFunction<T> time,
+                                     Consumer<T> action) {
+        for (int first = 0; ; first += pageSize) {
+            int offset = first;
+            List<T> events = keycloakCalls.execute(operation, () -> page.fetch(offset, pageSize));
+            for (T event : events) {
+                if (time.applyAsLong(event) < cursor) {
+                    return;
+                }
+                action.accept(event);
+            }
+            if (events.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private void warnIfEventsDisabled(RealmResource realmResource) {
+        try {
+            RealmEventsConfigRepresentation config = keycloakCalls.execute("eventsConfig", realmResource::getRealmEventsConfig);
+            if (!Boolean.TRUE.equals(config.isAdminEventsEnabled()) || !Boolean.TRUE.equals(config.isEventsEnabled())) {
+                log.warn("Keycloak realm {} doesn't save user or admin events, the user index will only catch up on full reloads", realm);
+            }
+        } catch (RuntimeException ex) {
+            log.debug("Couldn't read events config of realm {}: {}", realm, ex.getMessage());
+        }
+    }
+
+    private static List<GroupRepresentation> flatten(List<GroupRepresentation> groups) {
+        List<GroupRepresentation> flat = new ArrayList<>();
+        for (GroupRepresentation group : groups) {
+            flat.add(group);
+            if (group.getSubGroups() != null) {
+                flat.addAll(flatten(group.getSubGroups()));
+            }
+        }
+        return flat;
+    }
+
+    private double stalenessSeconds() {
+        return snapshot == null ? 0 : (System.currentTimeMillis() - lastSyncAt) / 1000.0;
+    }
+
+    private static Timer syncTimer(MeterRegistry meterRegistry, String type, String outcome) {
+        return Timer.builder("users.index.sync")
+                .description("User index synchronization with Keycloak")
+                .tags("type", type, "outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter readCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("users.index.reads")
+                .description("User lookups answered by the index (hit), not found in it (miss) or sent to Keycloak while it is stale (bypass)")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    private interface Page<T> {
+        List<T> fetch(int first, int max);
+    }
+}
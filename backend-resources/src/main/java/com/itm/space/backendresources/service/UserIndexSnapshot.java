@@ -0,0 +1,230 @@
+package com.itm.space.backendresources.service;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Неизменяемый снимок индекса пользователей: читается без блокировок, изменения собираются в новый снимок.
+ * Пользователи лежат в массиве, отсортированном по username (порядок выдачи Кейклока), поиск по id -
+ * открытая адресация по двум long UUID. Роли и группы хранятся номерами в общей таблице имен.
+ */
+final class UserIndexSnapshot {
+    private static final Comparator<Entry> BY_USERNAME = Comparator.comparing(Entry::username);
+
+    private final NameTable names;
+    private final Entry[] users;
+    private final UuidIntMap byId;
+
+    private UserIndexSnapshot(NameTable names, Entry[] users) {
+        this.names = names;
+        this.users = users;
+        this.byId = new UuidIntMap(users.length);
+        for (int i = 0; i < users.length; i++) {
+            byId.put(users[i].idMsb(), users[i].idLsb(), i);
+        }
+    }
+
+    static UserIndexSnapshot of(NameTable names, Collection<Entry> entries) {
+        Entry[] users = entries.toArray(Entry[]::new);
+        Arrays.sort(users, BY_USERNAME);
+        return new UserIndexSnapshot(names, users);
+    }
+
+    /**
+     * Новый снимок с замененными и удаленными пользователями, остальные записи переиспользуются.
+     */
+    UserIndexSnapshot with(Map<UUID, Entry> upserts, Collection<UUID> removals) {
+        BitSet replaced = new BitSet(users.length);
+        for (UUID id : upserts.keySet()) {
+            markPosition(replaced, id);
+        }
+        for (UUID id : removals) {
+            markPosition(replaced, id);
+        }
+        List<Entry> entries = new ArrayList<>(users.length + upserts.size());
+        for (int i = 0; i < users.length; i++) {
+            if (!replaced.get(i)) {
+                entries.add(users[i]);
+            }
+        }
+        entries.addAll(upserts.values());
+        return of(names, entries); //почти отсортированный массив TimSort досортировывает за линейное время
+    }
+
+    int size() {
+        return users.length;
+    }
+
+    Entry byId(UUID id) {
+        int position = byId.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return position < 0 ? null : users[position];
+    }
+
+    /**
+     * Страница как у {@code GET /users} Кейклока: по username, поиск - подстрока в username, email, имени или фамилии
+     * без учета регистра, каждое слово запроса должно совпасть; слово в кавычках сравнивается целиком, {@code *} игнорируется.
+     */
+    List<Entry> page(String search, int first, int max) {
+        List<Entry> page = new ArrayList<>(Math.min(max, users.length));
+        if (search == null || search.isBlank()) {
+            for (int i = Math.max(first, 0); i < users.length && page.size() < max; i++) {
+                page.add(users[i]);
+            }
+            return page;
+        }
+        String[] terms = search.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        int skipped = 0;
+        for (int i = 0; i < users.length && page.size() < max; i++) {
+            if (matches(users[i], terms) && skipped++ >= first) {
+                page.add(users[i]);
+            }
+        }
+        return page;
+    }
+
+    UserResponse toResponse(Entry entry) {
+        return new UserResponse(entry.firstName(), entry.lastName(), entry.email(),
+                names.resolve(entry.roles()), names.resolve(entry.groups()));
+    }
+
+    private void markPosition(BitSet positions, UUID id) {
+        int position = byId.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (position >= 0) {
+            positions.set(position);
+        }
+    }
+
+    private static boolean matches(Entry entry, String[] terms) {
+        for (String term : terms) {
+            boolean exact = term.length() > 1 && term.startsWith("\"") && term.endsWith("\"");
+            String value = exact ? term.substring(1, term.length() - 1) : term.replace("*", "");
+            if (!matches(entry.username(), value, exact) && !matches(entry.email(), value, exact)
+                    && !matches(lowerCase(entry.firstName()), value, exact)
+                    && !matches(lowerCase(entry.lastName()), value, exact)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String field, String value, boolean exact) {
+        return field != null && (exact ? field.equals(value) : field.contains(value));
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Пользователь в индексе. username и email в нижнем регистре, как их хранит Кейклок.
+     */
+    record Entry(long idMsb, long idLsb, String username, String email, String firstName, String lastName,
+                 int[] roles, int[] groups) {
+
+        static Entry of(UUID id, String username, String email, String firstName, String lastName,
+                        int[] roles, int[] groups) {
+            return new Entry(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                    username.toLowerCase(Locale.ROOT), email == null ? null : email.toLowerCase(Locale.ROOT),
+                    firstName, lastName, roles, groups);
+        }
+
+        UUID id() {
+            return new UUID(idMsb, idLsb);
+        }
+    }
+
+    /**
+     * Таблица имен ролей и групп: каждое имя хранится один раз, пользователи ссылаются на него номером.
+     * Пишет только поток синхронизации, читатели видят номера только из опубликованных снимков.
+     */
+    static final class NameTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private volatile String[] names = new String[64];
+
+        int[] intern(Collection<String> values) {
+            int[] result = new int[values.size()];
+            int i = 0;
+            for (String value : values) {
+                result[i++] = ids.computeIfAbsent(value, this::append);
+            }
+            return result;
+        }
+
+        List<String> resolve(int[] values) {
+            String[] current = names;
+            List<String> result = new ArrayList<>(values.length);
+            for (int value : values) {
+                result.add(current[value]);
+            }
+            return result;
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        private int append(String value) {
+            int id = ids.size();
+            String[] current = names;
+            if (id == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[id] = value;
+            names = current; //публикуем после записи имени
+            return id;
+        }
+    }
+
+    /**
+     * UUID -> позиция в массиве пользователей, открытая адресация без упаковки ключей в объекты.
+     */
+    static final class UuidIntMap {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        UuidIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1; //заполнение не больше половины
+            this.keys = new long[capacity * 2];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(values, -1);
+        }
+
+        void put(long msb, long lsb, int value) {
+            int slot = slot(msb, lsb);
+            while (values[slot] >= 0 && (keys[slot * 2] != msb || keys[slot * 2 + 1] != lsb)) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot * 2] = msb;
+            keys[slot * 2 + 1] = lsb;
+            values[slot] = value;
+        }
+
+        int get(long msb, long lsb) {
+            int slot = slot(msb, lsb);
+            while (values[slot] >= 0) {
+                if (keys[slot * 2] == msb && keys[slot * 2 + 1] == lsb) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int slot(long msb, long lsb) {
+            long hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.itm.space.backendresources.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itm.space.backendresources.api.request.UserRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Журнал очереди создания пользователей: строка JSON на каждую принятую задачу и на каждую завершенную.
+ * При открытии читается целиком, невыполненные задачи возвращаются для повторной постановки в очередь,
+ * а файл переписывается только с ними. То же сжатие повторяется, когда строк набирается вдвое больше,
+ * чем невыполненных задач (и не меньше {@code compactThreshold}): иначе под постоянной нагрузкой журнал
+ * с паролями рос бы без предела. В запросах есть пароли, поэтому файл доступен только владельцу.
+ */
+@Slf4j
+final class UserProvisioningJournal implements Closeable {
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+    private final int compactThreshold;
+    private final Map<UUID, Record> unfinished = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int appended;
+
+    UserProvisioningJournal(Path file, ObjectMapper objectMapper, boolean fsync, int compactThreshold) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Читает журнал, оставляет в нем только невыполненные задачи и открывает его на запись.
+     */
+    synchronized List<Record> open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        apply(line);
+                    }
+                }
+            }
+        }
+        compact();
+        return new ArrayList<>(unfinished.values());
+    }
+
+    synchronized void submitted(UUID id, Instant submittedAt, UserRequest request) throws IOException {
+        Record record = new Record(id, submittedAt, request, null);
+        append(record);
+        unfinished.put(id, record);
+    }
+
+    synchronized void completed(UUID id) throws IOException {
+        append(new Record(id, null, null, true));
+        unfinished.remove(id);
+        if (appended >= compactThreshold && appended >= 2 * unfinished.size()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Переписывает журнал только с невыполненными задачами: во временный файл и атомарной заменой.
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(compacted);
+        Files.createFile(compacted, ownerOnly());
+        try (Writer writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Record record : unfinished.values()) {
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.write('\n');
+            }
+        }
+        if (fsync) {
+            try (FileChannel written = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+                written.force(false);
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        appended = unfinished.size();
+    }
+
+    private void apply(String line) {
+        try {
+            Record record = objectMapper.readValue(line, Record.class);
+            if (Boolean.TRUE.equals(record.done())) {
+                unfinished.remove(record.id());
+            } else {
+                unfinished.put(record.id(), record);
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Skipping malformed provisioning journal line in {}: {}", file, ex.getOriginalMessage()); //оборванная запись при падении
+        }
+    }
+
+    private void append(Record record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((objectMapper.writeValueAsString(record) + '\n').getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        appended++;
+    }
+
+    private static FileAttribute<?>[] ownerOnly() {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+    }
+
+    /**
+     * Строка журнала: принятая задача с запросом или отметка о завершении ({@code done}).
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Record(UUID id, Instant submittedAt, UserRequest request, Boolean done) {
+    }
+}
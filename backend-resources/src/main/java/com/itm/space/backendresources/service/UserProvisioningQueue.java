@@ -0,0 +1,246 @@
+package com.itm.space.backendresources.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.ProvisioningJobResponse;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
+import com.itm.space.backendresources.exception.BackendResourcesException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронное создание пользователей: запрос ставится в ограниченную очередь, вызывающий сразу получает номер задачи.
+ * Рабочие потоки забирают из очереди до {@code users.provisioning.batch-size} задач и создают их одним пакетом
+ * через {@link UserService#createUsers}, состояние задачи хранится {@code users.provisioning.result-ttl}.
+ * Если задан {@code users.provisioning.journal-file}, принятые задачи пишутся в журнал и после перезапуска
+ * невыполненные ставятся в очередь снова - задача, прерванная посреди пакета, может быть выполнена повторно.
+ */
+@Slf4j
+@Service
+public class UserProvisioningQueue implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final UserService userService;
+    private final BlockingQueue<Job> queue;
+    private final Cache<UUID, ProvisioningJobResponse> jobs;
+    private final UserProvisioningJournal journal; //null - очередь только в памяти
+    private final List<Thread> workers = new ArrayList<>();
+    private final Timer queueWait;
+    private final Timer batchDuration;
+    private final DistributionSummary batchSize;
+    private final Counter created;
+    private final Counter failed;
+    private final Counter rejected;
+
+    @Value("${users.provisioning.workers:2}")
+    private int workerCount;
+    @Value("${users.provisioning.batch-size:50}") //не больше users.batch.max-size
+    private int maxBatchSize;
+    @Value("${users.provisioning.shutdown-timeout:10s}") //сколько ждать завершения текущих пакетов при остановке
+    private Duration shutdownTimeout;
+
+    private volatile boolean stopping;
+
+    public UserProvisioningQueue(UserService userService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                 @Value("${users.provisioning.queue-capacity:1000}") int queueCapacity,
+                                 @Value("${users.provisioning.result-ttl:1h}") Duration resultTtl,
+                                 @Value("${users.provisioning.journal-file:}") String journalFile,
+                                 @Value("${users.provisioning.journal-fsync:true}") boolean journalFsync,
+                                 @Value("${users.provisioning.journal-compact-lines:10000}") int journalCompactLines) throws IOException {
+        this.userService = userService;
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(resultTtl)
+                .build();
+        List<UserProvisioningJournal.Record> recovered = List.of();
+        if (journalFile.isBlank()) {
+            this.journal = null;
+        } else {
+            this.journal = new UserProvisioningJournal(Path.of(journalFile), objectMapper, journalFsync, journalCompactLines);
+            recovered = journal.open();
+        }
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, recovered.size()));
+        for (UserProvisioningJournal.Record record : recovered) {
+            Job job = new Job(record.id(), record.request(), record.submittedAt(), System.nanoTime()); //ожидание считаем с перезапуска
+            jobs.put(job.id(), job.queued());
+            queue.add(job);
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Recovered {} unfinished provisioning jobs from {}", recovered.size(), journalFile);
+        }
+
+        this.queueWait = Timer.builder("users.provisioning.queue.wait")
+                .description("Time a user provisioning job spent in the queue before a worker picked it up")
+                .register(meterRegistry);
+        this.batchDuration = Timer.builder("users.provisioning.batch")
+                .description("Time to provision one batch of queued users in Keycloak")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("users.provisioning.batch.size")
+                .description("Jobs taken from the provisioning queue in one batch")
+                .register(meterRegistry);
+        this.created = jobCounter(meterRegistry, "created");
+        this.failed = jobCounter(meterRegistry, "failed");
+        this.rejected = jobCounter(meterRegistry, "rejected");
+        Gauge.builder("users.provisioning.queue.depth", queue, BlockingQueue::size)
+                .description("User provisioning jobs waiting in the queue")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "users-provisioning-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        stopping = true;
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        for (Thread worker : workers) {
+            worker.join(Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1));
+            worker.interrupt(); //не успевший пакет останется в журнале
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Ставит проверенный запрос в очередь. Если очередь заполнена - 503, вызывающему стоит повторить позже.
+     */
+    public ProvisioningJobResponse submit(UserRequest userRequest) {
+        Job job = new Job(UUID.randomUUID(), userRequest, Instant.now(), System.nanoTime());
+        journal(job.id(), () -> journal.submitted(job.id(), job.submittedAt(), userRequest));
+        ProvisioningJobResponse queued = job.queued();
+        jobs.put(job.id(), queued); //до постановки в очередь, чтобы рабочий поток не перезаписал состояние
+        if (!queue.offer(job)) {
+            jobs.invalidate(job.id());
+            journal(job.id(), () -> journal.completed(job.id()));
+            rejected.increment();
+            throw new BackendResourcesException("User provisioning queue is full", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return queued;
+    }
+
+    public ProvisioningJobResponse getJob(UUID id) {
+        ProvisioningJobResponse job = jobs.getIfPresent(id);
+        if (job == null) {
+            throw new BackendResourcesException("Provisioning job " + id + " not found", HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    private void work() {
+        List<Job> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!stopping) {
+                Job first = queue.poll(POLL_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                process(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(List<Job> batch) throws InterruptedException {
+        long takenAt = System.nanoTime();
+        List<UserRequest> requests = new ArrayList<>(batch.size());
+        for (Job job : batch) {
+            queueWait.record(takenAt - job.enqueuedAt(), TimeUnit.NANOSECONDS);
+            jobs.put(job.id(), job.queued().running());
+            requests.add(job.request());
+        }
+        batchSize.record(batch.size());
+        List<UserCreationResponse> results;
+        try {
+            results = userService.createUsers(requests);
+        } catch (RuntimeException ex) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException(); //остановка посреди пакета, задачи остаются в журнале
+            }
+            log.error("Exception on provisioning batch: ", ex);
+            HttpStatus status = ex instanceof BackendResourcesException backendException && backendException.getHttpStatus() != null
+                    ? backendException.getHttpStatus() : HttpStatus.INTERNAL_SERVER_ERROR;
+            results = requests.stream()
+                    .map(request -> UserCreationResponse.failed(request.getUsername(), status.value(), ex.getMessage()))
+                    .toList();
+        } finally {
+            batchDuration.record(System.nanoTime() - takenAt, TimeUnit.NANOSECONDS);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Job job = batch.get(i);
+            UserCreationResponse result = results.get(i);
+            jobs.put(job.id(), job.queued().done(result));
+            (result.getId() != null ? created : failed).increment();
+            if (journal != null) {
+                try {
+                    journal.completed(job.id());
+                } catch (IOException ex) { //задача будет выполнена повторно после перезапуска и получит 409
+                    log.error("Failed to mark provisioning job {} completed in the journal: ", job.id(), ex);
+                }
+            }
+        }
+    }
+
+    private void journal(UUID jobId, JournalWrite write) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            write.run();
+        } catch (IOException ex) {
+            log.error("Failed to write provisioning job {} to the journal: ", jobId, ex);
+            throw new BackendResourcesException("User provisioning journal is unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private static Counter jobCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("users.provisioning.jobs")
+                .description("User provisioning jobs by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private interface JournalWrite {
+        void run() throws IOException;
+    }
+
+    private record Job(UUID id, UserRequest request, Instant submittedAt, long enqueuedAt) {
+
+        ProvisioningJobResponse queued() {
+            return ProvisioningJobResponse.queued(id, request.getUsername(), submittedAt);
+        }
+    }
+}
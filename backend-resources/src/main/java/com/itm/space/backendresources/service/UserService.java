@@ -1,14 +1,28 @@
 package com.itm.space.backendresources.service;
 
+import com.itm.space.backendresources.api.request.UserField;
 import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
 import com.itm.space.backendresources.api.response.UserResponse;
 
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface UserService {
 
     void createUser(UserRequest userRequest);
 
+    List<UserCreationResponse> createUsers(List<UserRequest> userRequests);
+
+    UserCreationResponse tryCreateUser(UserRequest userRequest);
+
     UserResponse getUserById(UUID id);
 
+    UserResponse getUserById(UUID id, Set<UserField> fields);
+
+    List<UserResponse> getUsers(String search, int first, int max);
+
+    List<UserResponse> getUsers(String search, int first, int max, Set<UserField> fields);
+
 }
@@ -1,43 +1,194 @@
 package com.itm.space.backendresources.service;
 
+import com.itm.space.backendresources.api.request.UserField;
 import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
 import com.itm.space.backendresources.api.response.UserResponse;
 import com.itm.space.backendresources.exception.BackendResourcesException;
 import com.itm.space.backendresources.mapper.UserMapper;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.admin.client.CreatedResponseUtil;
 import org.keycloak.admin.client.Keycloak;
-import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.itm.space.backendresources.configuration.CacheConfiguration.USERS_CACHE;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
+    @Lazy //прокси: клиент Кейклока создается после старта, а не при создании сервиса
     private final Keycloak keycloakClient;
+    private final KeycloakCallTemplate keycloakCalls;
     private final UserMapper userMapper;
+    private final AsyncTaskExecutor keycloakExecutor;
+    private final CacheManager cacheManager;
+    private final Validator validator;
+    private final UserIndex userIndex;
+    private final ObjectProvider<Tracer> tracer; //трассировка выключена - спаны не создаются
 
     @Value("${keycloak.realm}")
     private String realm;
+    @Value("${keycloak.client.call-timeout:5s}")
+    private Duration callTimeout;
+    @Value("${users.batch.concurrency:8}")
+    private int batchConcurrency;
+    @Value("${users.batch.max-size:5000}")
+    private int batchMaxSize;
+    @Value("${users.batch.timeout:2m}")
+    private Duration batchTimeout;
+    @Value("${users.list.concurrency:8}")
+    private int pageConcurrency;
+    @Value("${users.list.max-page-size:100}")
+    private int maxPageSize;
 
     public void createUser(UserRequest userRequest) {
-        CredentialRepresentation password = preparePasswordRepresentation(userRequest.getPassword());
-        UserRepresentation user = prepareUserRepresentation(userRequest, password);
+        provisionUser(userRequest);
+    }
+
+    @Override
+    public List<UserCreationResponse> createUsers(List<UserRequest> userRequests) {
+        if (userRequests.size() > batchMaxSize) {
+            throw new BackendResourcesException("Batch size should not exceed " + batchMaxSize, HttpStatus.BAD_REQUEST);
+        }
+        long deadline = System.nanoTime() + batchTimeout.toNanos();
+        List<Future<UserCreationResponse>> results = new ArrayList<>(userRequests.size());
+        userRequests.forEach(userRequest -> results.add(rejectIfInvalid(userRequest)));
+
+        BoundedExecutor batchExecutor = new BoundedExecutor(keycloakExecutor, batchConcurrency);
+        try {
+            for (int i = 0; i < userRequests.size(); i++) {
+                if (results.get(i) == null) {
+                    results.set(i, submitCreate(batchExecutor, userRequests.get(i), deadline));
+                }
+            }
+            List<UserCreationResponse> created = new ArrayList<>(results.size());
+            for (int i = 0; i < results.size(); i++) {
+                created.add(awaitCreated(results.get(i), userRequests.get(i), deadline));
+            }
+            return created;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            results.stream().filter(Objects::nonNull).forEach(result -> result.cancel(true));
+            throw new BackendResourcesException("Interrupted while creating users", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private Future<UserCreationResponse> submitCreate(BoundedExecutor batchExecutor, UserRequest userRequest, long deadline)
+            throws InterruptedException {
+        try {
+            return batchExecutor.submit(() -> createUserQuietly(userRequest), deadline);
+        } catch (TaskRejectedException ex) { //общий пул Кейклока переполнен - отказ только этому элементу, остальные идут дальше
+            return CompletableFuture.completedFuture(UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.SERVICE_UNAVAILABLE.value(), "Keycloak executor is saturated"));
+        } catch (TimeoutException ex) {
+            return CompletableFuture.completedFuture(UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.GATEWAY_TIMEOUT.value(), "Batch timed out before the user was submitted"));
+        }
+    }
+
+    private UserCreationResponse awaitCreated(Future<UserCreationResponse> result, UserRequest userRequest,
+                                              long deadline) throws InterruptedException {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            result.cancel(true);
+            log.error("Timeout on \"createUsers\" after {}", batchTimeout);
+            return UserCreationResponse.failed(userRequest.getUsername(), HttpStatus.GATEWAY_TIMEOUT.value(),
+                    "User creation timed out, the user may still be created");
+        } catch (ExecutionException ex) {
+            log.error("Exception on \"createUsers\": ", ex.getCause());
+            return UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getCause().getMessage());
+        }
+    }
+
+    @Override
+    public UserCreationResponse tryCreateUser(UserRequest userRequest) {
+        CompletableFuture<UserCreationResponse> rejected = rejectIfInvalid(userRequest);
+        return rejected != null ? rejected.join() : createUserQuietly(userRequest);
+    }
+
+    private CompletableFuture<UserCreationResponse> rejectIfInvalid(UserRequest userRequest) {
+        if (userRequest == null) { //null в массиве пакета или строка "null" в NDJSON
+            return CompletableFuture.completedFuture(
+                    UserCreationResponse.failed(null, HttpStatus.BAD_REQUEST.value(), "User must not be null"));
+        }
+        Set<ConstraintViolation<UserRequest>> violations = validator.validate(userRequest);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        String error = violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+        return CompletableFuture.completedFuture(
+                UserCreationResponse.failed(userRequest.getUsername(), HttpStatus.BAD_REQUEST.value(), error));
+    }
+
+    private UserCreationResponse createUserQuietly(UserRequest userRequest) {
+        try {
+            return UserCreationResponse.created(userRequest.getUsername(), provisionUser(userRequest));
+        } catch (BackendResourcesException ex) {
+            HttpStatus status = ex.getHttpStatus() != null ? ex.getHttpStatus() : HttpStatus.INTERNAL_SERVER_ERROR;
+            return UserCreationResponse.failed(userRequest.getUsername(), status.value(), ex.getMessage());
+        } catch (CallNotPermittedException | BulkheadFullException ex) {
+            return UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.error("Exception on \"createUsers\": ", ex);
+            return UserCreationResponse.failed(userRequest.getUsername(),
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage());
+        }
+    }
+
+    private String provisionUser(UserRequest userRequest) {
+        UserRepresentation user = mapped("userRequestToUserRepresentation", () -> userMapper.userRequestToUserRepresentation(userRequest));
         try {
-            Response response = keycloakClient.realm(realm).users().create(user);
-            String userId = CreatedResponseUtil.getCreatedId(response);
+            UsersResource usersResource = keycloakClient.realm(realm).users();
+            String userId = keycloakCalls.executeOnce("create",
+                    () -> CreatedResponseUtil.getCreatedId(usersResource.create(user)));
             log.info("Created UserId: {}", userId);
+            userIndex.refresh(userId);
+            return userId;
         } catch (WebApplicationException ex) {
             log.error("Exception on \"createUser\": ", ex);
             throw new BackendResourcesException(ex.getMessage(), HttpStatus.resolve(ex.getResponse().getStatus()));
@@ -46,40 +197,174 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    @Cacheable(cacheNames = USERS_CACHE, key = "#id", sync = true, condition = "!@userIndex.serving") //индекс свежее кэша
     public UserResponse getUserById(UUID id) {
-        UserRepresentation userRepresentation;
-        List<RoleRepresentation> userRoles;
-        List<GroupRepresentation> userGroups;
+        UserResponse indexed = userIndex.findById(id);
+        return indexed != null ? indexed : fetchUser(id, UserField.ALL);
+    }
+
+    @Override
+    public UserResponse getUserById(UUID id, Set<UserField> fields) {
+        UserResponse known = userIndex.findById(id);
+        if (known == null) {
+            known = cachedUser(id); //полный ответ из кэша дешевле любого вызова Кейклока
+        }
+        return UserField.project(known != null ? known : fetchUser(id, fields), fields);
+    }
+
+    private UserResponse fetchUser(UUID id, Set<UserField> fields) {
+        List<Future<?>> calls = new ArrayList<>();
         try {
-            userRepresentation = keycloakClient.realm(realm).users().get(String.valueOf(id)).toRepresentation();
-            userRoles = keycloakClient.realm(realm)
-                    .users().get(String.valueOf(id))
-                    .roles().getAll().getRealmMappings();
-            userGroups = keycloakClient.realm(realm).users().get(String.valueOf(id)).groups();
+            UserResource userResource = keycloakClient.realm(realm).users().get(String.valueOf(id));
+            Future<UserRepresentation> userRepresentation = submitIfNeeded(calls,
+                    !Collections.disjoint(fields, UserField.PROFILE), "toRepresentation",
+                    () -> keycloakCalls.execute("toRepresentation", userResource::toRepresentation), new UserRepresentation());
+            Future<List<RoleRepresentation>> userRoles = submitIfNeeded(calls, fields.contains(UserField.ROLES),
+                    "roleMappings", () -> fetchRealmRoles(userResource), List.of());
+            Future<List<GroupRepresentation>> userGroups = submitIfNeeded(calls, fields.contains(UserField.GROUPS),
+                    "groups", () -> fetchGroups(userResource), List.of());
+            long deadline = System.nanoTime() + callTimeout.toNanos();
+            UserRepresentation user = await(userRepresentation, deadline);
+            List<RoleRepresentation> roles = await(userRoles, deadline);
+            List<GroupRepresentation> groups = await(userGroups, deadline);
+            return mapped("userRepresentationToUserResponse", () -> userMapper.userRepresentationToUserResponse(user, roles, groups));
+        } catch (BackendResourcesException | CallNotPermittedException | BulkheadFullException ex) {
+            throw ex;
+        } catch (TaskRejectedException ex) {
+            log.error("Exception on \"getUserById\": ", ex);
+            throw new BackendResourcesException("Keycloak executor is saturated", HttpStatus.SERVICE_UNAVAILABLE);
         } catch (RuntimeException ex) {
             log.error("Exception on \"getUserById\": ", ex);
             throw new BackendResourcesException(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            calls.forEach(call -> call.cancel(true));
+        }
+    }
+
+    @Override
+    public List<UserResponse> getUsers(String search, int first, int max) {
+        return getUsers(search, first, max, UserField.ALL);
+    }
+
+    @Override
+    public List<UserResponse> getUsers(String search, int first, int max, Set<UserField> fields) {
+        int pageSize = Math.max(1, Math.min(max, maxPageSize));
+        List<UserResponse> indexed = userIndex.findUsers(search, Math.max(first, 0), pageSize);
+        if (indexed != null) {
+            return indexed.stream().map(user -> UserField.project(user, fields)).toList();
+        }
+        List<Future<?>> calls = new ArrayList<>();
+        try {
+            UsersResource usersResource = keycloakClient.realm(realm).users();
+            List<UserRepresentation> page = search == null || search.isBlank()
+                    ? keycloakCalls.execute("list", () -> usersResource.list(Math.max(first, 0), pageSize))
+                    : keycloakCalls.execute("search", () -> usersResource.search(search, Math.max(first, 0), pageSize));
+
+            long deadline = System.nanoTime() + callTimeout.toNanos(); //до раздачи: ожидание слота тоже в пределах callTimeout
+            BoundedExecutor pageExecutor = new BoundedExecutor(keycloakExecutor, pageConcurrency);
+            List<Future<List<RoleRepresentation>>> userRoles = new ArrayList<>(page.size());
+            List<Future<List<GroupRepresentation>>> userGroups = new ArrayList<>(page.size());
+            for (UserRepresentation user : page) {
+                UserResource userResource = usersResource.get(user.getId());
+                userRoles.add(fields.contains(UserField.ROLES)
+                        ? submit(calls, pageExecutor.submit(() -> fetchRealmRoles(userResource), deadline))
+                        : skipped("roleMappings", List.of()));
+                userGroups.add(fields.contains(UserField.GROUPS)
+                        ? submit(calls, pageExecutor.submit(() -> fetchGroups(userResource), deadline))
+                        : skipped("groups", List.of()));
+            }
+
+            List<List<RoleRepresentation>> roles = new ArrayList<>(page.size());
+            List<List<GroupRepresentation>> groups = new ArrayList<>(page.size());
+            for (int i = 0; i < page.size(); i++) {
+                roles.add(await(userRoles.get(i), deadline));
+                groups.add(await(userGroups.get(i), deadline));
+            }
+            return mapped("userRepresentationToUserResponse", () -> {
+                List<UserResponse> users = new ArrayList<>(page.size());
+                for (int i = 0; i < page.size(); i++) {
+                    users.add(UserField.project(userMapper.userRepresentationToUserResponse(page.get(i), roles.get(i), groups.get(i)), fields));
+                }
+                return users;
+            });
+        } catch (BackendResourcesException | CallNotPermittedException | BulkheadFullException ex) {
+            throw ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BackendResourcesException("Interrupted while waiting for Keycloak", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (TimeoutException ex) {
+            log.error("Timeout on Keycloak call after {}", callTimeout);
+            throw new BackendResourcesException("Keycloak call timed out", HttpStatus.GATEWAY_TIMEOUT);
+        } catch (TaskRejectedException ex) {
+            log.error("Exception on \"getUsers\": ", ex);
+            throw new BackendResourcesException("Keycloak executor is saturated", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (RuntimeException ex) {
+            log.error("Exception on \"getUsers\": ", ex);
+            throw new BackendResourcesException(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            calls.forEach(call -> call.cancel(true));
+        }
+    }
+
+    private List<RoleRepresentation> fetchRealmRoles(UserResource userResource) {
+        return keycloakCalls.execute("roleMappings", () -> userResource.roles().getAll().getRealmMappings());
+    }
+
+    private List<GroupRepresentation> fetchGroups(UserResource userResource) {
+        return keycloakCalls.execute("groups", userResource::groups);
+    }
+
+    private UserResponse cachedUser(UUID id) {
+        Cache usersCache = cacheManager.getCache(USERS_CACHE);
+        return usersCache == null ? null : usersCache.get(id, UserResponse.class);
+    }
+
+    /**
+     * Шаг {@link UserMapper} в отдельном спане {@code user-mapper}: видно, сколько запроса уходит на маппинг, а не на Кейклок.
+     */
+    private <T> T mapped(String mapping, Supplier<T> step) {
+        Span span = tracer.getIfAvailable(() -> Tracer.NOOP).nextSpan().name("user-mapper").tag("mapping", mapping).start();
+        try {
+            return step.get();
+        } finally {
+            span.end();
+        }
+    }
+
+    private <T> Future<T> submit(List<Future<?>> calls, Callable<T> call) {
+        return submit(calls, keycloakExecutor.submit(call));
+    }
+
+    private <T> Future<T> submitIfNeeded(List<Future<?>> calls, boolean needed, String operation,
+                                         Callable<T> call, T skippedValue) {
+        return needed ? submit(calls, call) : skipped(operation, skippedValue);
+    }
+
+    private <T> Future<T> skipped(String operation, T value) {
+        keycloakCalls.skipped(operation);
+        return CompletableFuture.completedFuture(value);
+    }
+
+    private <T> Future<T> submit(List<Future<?>> calls, Future<T> future) {
+        calls.add(future);
+        return future;
+    }
+
+    private <T> T await(Future<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            log.error("Timeout on Keycloak call after {}", callTimeout);
+            throw new BackendResourcesException("Keycloak call timed out", HttpStatus.GATEWAY_TIMEOUT);
+        } catch (ExecutionException ex) {
+            if (KeycloakCallTemplate.isRejected(ex.getCause())) {
+                throw (RuntimeException) ex.getCause();
+            }
+            log.error("Exception on Keycloak call: ", ex.getCause());
+            throw new BackendResourcesException(ex.getCause().getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BackendResourcesException("Interrupted while waiting for Keycloak", HttpStatus.SERVICE_UNAVAILABLE);
         }
-        return userMapper.userRepresentationToUserResponse(userRepresentation, userRoles, userGroups);
-    }
-
-    private CredentialRepresentation preparePasswordRepresentation(String password) {
-        CredentialRepresentation credentialRepresentation = new CredentialRepresentation();
-        credentialRepresentation.setTemporary(false);
-        credentialRepresentation.setType(CredentialRepresentation.PASSWORD);
-        credentialRepresentation.setValue(password);
-        return credentialRepresentation;
-    }
-
-    private UserRepresentation prepareUserRepresentation(UserRequest userRequest,
-                                                         CredentialRepresentation credentialRepresentation) {
-        UserRepresentation newUser = new UserRepresentation();
-        newUser.setUsername(userRequest.getUsername());
-        newUser.setEmail(userRequest.getEmail());
-        newUser.setCredentials(List.of(credentialRepresentation));
-        newUser.setEnabled(true);
-        newUser.setFirstName(userRequest.getFirstName());
-        newUser.setLastName(userRequest.getLastName());
-        return newUser;
     }
 }
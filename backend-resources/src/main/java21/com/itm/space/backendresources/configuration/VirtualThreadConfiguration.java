@@ -0,0 +1,50 @@
+package com.itm.space.backendresources.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Режим виртуальных потоков (Java 21): запросы Tomcat и блокирующие вызовы Кейклока в {@code UserServiceImpl}
+ * выполняются на виртуальных потоках. Число одновременных вызовов Кейклока по-прежнему ограничивает bulkhead.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+    @Value("${virtual-threads.pinning.threshold:20ms}") //о более коротких закреплениях не сообщаем
+    private Duration pinningThreshold;
+    @Value("${virtual-threads.pinning.stack-depth:8}")
+    private int pinningStackDepth;
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor("tomcat-"));
+    }
+
+    @Bean(destroyMethod = "") //потоки не переиспользуются, закрывать нечего
+    public AsyncTaskExecutor keycloakExecutor(ObjectProvider<Tracer> tracer) {
+        TaskExecutorAdapter executor = new TaskExecutorAdapter(virtualThreadExecutor("keycloak-"));
+        tracer.ifAvailable(available -> executor.setTaskDecorator(available.currentTraceContext()::wrap)); //спаны вызовов - потомки спана запроса
+        return executor;
+    }
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        return new VirtualThreadPinningMonitor(pinningThreshold, pinningStackDepth, meterRegistry);
+    }
+
+    private static ExecutorService virtualThreadExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
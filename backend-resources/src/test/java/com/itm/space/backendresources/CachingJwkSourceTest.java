@@ -0,0 +1,121 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.configuration.CachingJwkSource;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingJwkSourceTest {
+    private final MockWebServer keycloak = new MockWebServer();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CachingJwkSource jwkSource;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void shutdown() throws Exception {
+        if (jwkSource != null) {
+            jwkSource.destroy();
+        }
+        keycloak.shutdown();
+    }
+
+    @Test
+    public void keysFromCacheFileAreUsedWhileKeycloakIsDown() throws Exception {
+        RSAKey key = rsaKey("k1");
+        Path cacheFile = tempDir.resolve("jwks.json");
+        Files.writeString(cacheFile, new JWKSet(key).toString(true));
+        keycloak.enqueue(new MockResponse().setResponseCode(503));
+
+        jwkSource = jwkSource(cacheFile, Duration.ofMinutes(1));
+        jwkSource.afterPropertiesSet();
+
+        assertTrue(jwkSource.hasKey("k1"));
+        assertEquals(List.of(key.toPublicJWK()), select("k1"));
+    }
+
+    @Test
+    public void cacheFileWritableByOthersIsIgnored() throws Exception {
+        Path cacheFile = tempDir.resolve("jwks.json");
+        Files.writeString(cacheFile, new JWKSet(rsaKey("k1")).toString(true));
+        Files.setPosixFilePermissions(cacheFile, PosixFilePermissions.fromString("rw-rw-rw-"));
+        keycloak.enqueue(new MockResponse().setResponseCode(503));
+
+        jwkSource = jwkSource(cacheFile, Duration.ofMinutes(1));
+        jwkSource.afterPropertiesSet();
+
+        assertFalse(jwkSource.hasKey("k1"));
+    }
+
+    @Test
+    public void unknownKeyIdRefreshesAndPersistsPublicKeys() throws Exception {
+        RSAKey oldKey = rsaKey("k1");
+        RSAKey newKey = rsaKey("k2");
+        keycloak.enqueue(jwks(oldKey));
+        keycloak.enqueue(jwks(oldKey, newKey));
+        Path cacheFile = tempDir.resolve("keys/jwks.json");
+
+        jwkSource = jwkSource(cacheFile, Duration.ZERO);
+        assertEquals(1, select("k1").size());
+        assertFalse(jwkSource.hasKey("k2"));
+        assertEquals(List.of(newKey.toPublicJWK()), select("k2"));
+
+        JWKSet persisted = JWKSet.parse(Files.readString(cacheFile));
+        assertEquals(2, persisted.getKeys().size());
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheFile)));
+        assertTrue(persisted.getKeys().stream().noneMatch(JWK::isPrivate));
+        assertEquals(2.0, meterRegistry.get("security.jwks.refresh").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    public void unknownKeyIdDoesNotRefreshMoreOftenThanMinInterval() throws Exception {
+        keycloak.enqueue(jwks(rsaKey("k1")));
+
+        jwkSource = jwkSource(null, Duration.ofMinutes(1));
+        select("k1");
+        assertTrue(select("unknown").isEmpty());
+        assertTrue(select("unknown").isEmpty());
+
+        assertEquals(1, keycloak.getRequestCount());
+    }
+
+    private CachingJwkSource jwkSource(Path cacheFile, Duration minRefreshInterval) {
+        return new CachingJwkSource(keycloak.url("/auth/realms/ITM/protocol/openid-connect/certs").url(), cacheFile,
+                Duration.ofMinutes(5), minRefreshInterval, Duration.ofHours(1), Duration.ofMinutes(1),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), meterRegistry);
+    }
+
+    private List<JWK> select(String keyId) throws Exception {
+        return jwkSource.get(new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build()), null);
+    }
+
+    private static MockResponse jwks(RSAKey... keys) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(new JWKSet(List.of(keys)).toString(true));
+    }
+
+    private static RSAKey rsaKey(String keyId) throws Exception {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate();
+    }
+}
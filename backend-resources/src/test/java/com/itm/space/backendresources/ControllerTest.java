@@ -1,7 +1,16 @@
 package com.itm.space.backendresources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.configuration.BinaryFormatsConfiguration;
+import com.itm.space.backendresources.configuration.CacheConfiguration;
 import com.itm.space.backendresources.exception.BackendResourcesException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,22 +24,33 @@ import org.keycloak.representations.idm.UserRepresentation;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.util.List;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 //@SpringBootTest
@@ -44,6 +64,15 @@ public class ControllerTest extends BaseIntegrationTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CircuitBreaker keycloakCircuitBreaker;
+
     @Test
     @SneakyThrows
     public void helloMethodShouldBeOk1() {
@@ -75,6 +104,8 @@ public class ControllerTest extends BaseIntegrationTest {
         userRequest = new UserRequest("gleb", "test@mail.ru", "gleb", "Gleb", "Emelyanov");
         userResource = mock(UserResource.class);
         userRepresentation = mock(UserRepresentation.class);
+        cacheManager.getCache(CacheConfiguration.USERS_CACHE).clear();
+        keycloakCircuitBreaker.reset();
     }
 
     @Test
@@ -110,6 +141,84 @@ public class ControllerTest extends BaseIntegrationTest {
         mvc.perform(requestWithContent(post("/api/users"),userRequest)).andExpect(status().is(500));
     }
 
+    @Test
+    @SneakyThrows
+    public void keycloakCallsAreTimedWithStatus() {
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(Response.status(Response.Status.CONFLICT).build());
+        mvc.perform(requestWithContent(post("/api/users"), userRequest)).andExpect(status().is(409));
+        Timer timer = meterRegistry.find("keycloak.client.requests")
+                .tags("operation", "create", "outcome", "CLIENT_ERROR", "status", "409")
+                .timer();
+        assertNotNull(timer);
+        assertTrue(timer.count() > 0);
+    }
+
+    @Test
+    @SneakyThrows
+    public void batchCreateReturnsResultPerItem() {
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(response);
+        when(response.getStatusInfo()).thenReturn(Response.Status.CREATED);
+        UserRequest invalid = new UserRequest("g", "", "g", "Gleb", "Emelyanov");
+        mvc.perform(requestWithContent(post("/api/users/batch"), List.of(userRequest, invalid)))
+                .andDo(print())
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value(201))
+                .andExpect(jsonPath("$[1].status").value(400));
+        verify(usersResource, times(1)).create(any(UserRepresentation.class));
+    }
+
+    @Test
+    @SneakyThrows
+    public void asyncCreateReturnsJobAndReportsResult() {
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(response);
+        when(response.getStatusInfo()).thenReturn(Response.Status.CREATED);
+        MockHttpServletResponse accepted = mvc.perform(requestWithContent(post("/api/users"), userRequest)
+                        .header("Prefer", "respond-async"))
+                .andExpect(status().is(202))
+                .andExpect(jsonPath("$.username").value("gleb"))
+                .andReturn().getResponse();
+        String location = accepted.getHeader("Location");
+        assertEquals("/api/users/jobs/" + new ObjectMapper().readTree(accepted.getContentAsString()).get("id").asText(), location);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        String job = mvc.perform(get(location)).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        while (!job.contains("\"DONE\"") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            job = mvc.perform(get(location)).andReturn().getResponse().getContentAsString();
+        }
+        assertTrue(job.contains("\"status\":201"), job);
+        verify(usersResource, times(1)).create(any(UserRepresentation.class));
+        mvc.perform(get("/api/users/jobs/3d40251d-829c-454e-b389-ec5e9c38a4cc")).andExpect(status().is(404));
+    }
+
+    @Test
+    @SneakyThrows
+    public void ndjsonImportStreamsResultPerLine() {
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(response);
+        when(response.getStatusInfo()).thenReturn(Response.Status.CREATED);
+        String body = new ObjectMapper().writeValueAsString(userRequest) + "\n\n{not json\nnull\n" + "x".repeat(70_000) + "\n";
+        String result = mvc.perform(post("/api/users/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = result.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("\"status\":201"));
+        assertTrue(lines[1].contains("\"status\":400"));
+        assertTrue(lines[2].contains("Empty record at line 4"), lines[2]);
+        assertTrue(lines[3].contains("exceeds 65536 characters"), lines[3]);
+    }
+
     @Test
     public void helloMethodShouldBeOk3() throws Exception {
         this.mvc.perform(get("/api/users/hello")
@@ -133,6 +242,158 @@ public class ControllerTest extends BaseIntegrationTest {
                 .andExpect(status().is(200))
                 .andDo(print());
     }
+    @Test
+    public void repeatedGetUserByIdIsServedFromCache() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(realmResource.users().get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+        when(userResource.toRepresentation()).thenReturn(userRepresentation);
+
+        this.mvc.perform(get("/api/users/{id}", id)).andExpect(status().is(200));
+        this.mvc.perform(get("/api/users/{id}", id)).andExpect(status().is(200));
+        verify(userResource, times(1)).toRepresentation();
+    }
+
+    @Test
+    public void getUserByIdWithFieldsSkipsUnneededCalls() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        UserRepresentation user = new UserRepresentation();
+        user.setEmail("test@mail.ru");
+        user.setFirstName("Gleb");
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.toRepresentation()).thenReturn(user);
+        double skippedGroups = skippedCalls("groups");
+
+        this.mvc.perform(get("/api/users/{id}", id).param("fields", "email"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.email").value("test@mail.ru"))
+                .andExpect(jsonPath("$.firstName").doesNotExist())
+                .andExpect(jsonPath("$.roles").doesNotExist());
+        verify(userResource, never()).roles();
+        verify(userResource, never()).groups();
+        assertEquals(skippedGroups + 1, skippedCalls("groups"));
+        this.mvc.perform(get("/api/users/{id}", id).param("fields", "password"))
+                .andExpect(status().is(400));
+    }
+
+    @Test
+    public void matchingIfNoneMatchReturns304() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        UserRepresentation user = new UserRepresentation();
+        user.setEmail("test@mail.ru");
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+        when(userResource.toRepresentation()).thenReturn(user);
+
+        String eTag = this.mvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+        MockHttpServletResponse notModified = this.mvc.perform(get("/api/users/{id}", id).header("If-None-Match", eTag))
+                .andExpect(status().is(304))
+                .andReturn().getResponse();
+        assertEquals("", notModified.getContentAsString());
+        this.mvc.perform(get("/api/users/{id}", id).header("If-None-Match", "\"other\""))
+                .andExpect(status().is(200));
+    }
+
+    @Test
+    public void userReadsArePrivatelyCacheable() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+        when(userResource.toRepresentation()).thenReturn(new UserRepresentation());
+
+        MockHttpServletResponse user = this.mvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().is(200))
+                .andReturn().getResponse();
+        assertEquals("max-age=5, private", user.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertNull(user.getHeader(HttpHeaders.PRAGMA));
+        String hello = this.mvc.perform(get("/api/users/hello")).andReturn().getResponse().getHeader(HttpHeaders.CACHE_CONTROL);
+        assertTrue(hello.contains("no-store"), hello); // -  
+    }
+
+    @Test
+    public void userIsNegotiatedAsSmileAndCreatedFromCbor() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        UserRepresentation user = new UserRepresentation();
+        user.setEmail("test@mail.ru");
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.toRepresentation()).thenReturn(user);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(response);
+        when(response.getStatusInfo()).thenReturn(Response.Status.CREATED);
+
+        byte[] smile = this.mvc.perform(get("/api/users/{id}", id).param("fields", "email")
+                        .accept(BinaryFormatsConfiguration.APPLICATION_SMILE))
+                .andExpect(status().is(200))
+                .andExpect(content().contentType(BinaryFormatsConfiguration.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("test@mail.ru", new ObjectMapper(new SmileFactory()).readTree(smile).get("email").asText());
+        this.mvc.perform(get("/api/users/{id}", id).param("fields", "email"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+
+        this.mvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .content(new ObjectMapper(new CBORFactory()).writeValueAsBytes(userRequest)))
+                .andExpect(status().is(200));
+        verify(usersResource).create(any(UserRepresentation.class));
+    }
+
+    private double skippedCalls(String operation) {
+        Counter counter = meterRegistry.find("keycloak.client.requests.skipped").tag("operation", operation).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    public void getUsersResolvesRolesAndGroupsPerUser() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setEmail("test@mail.ru");
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.search(eq("gleb"), eq(0), eq(20))).thenReturn(List.of(user));
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+
+        this.mvc.perform(get("/api/users").param("search", "gleb"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$[0].email").value("test@mail.ru"));
+        verify(userResource).groups();
+        verify(userResource, never()).toRepresentation();
+    }
+
+    @Test
+    public void exportUsersStreamsNdjson() throws Exception {
+        UserRepresentation user = new UserRepresentation();
+        user.setId("3d40251d-829c-454e-b389-ec5e9c38a4cc");
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.list(eq(0), anyInt())).thenReturn(List.of(user, user));
+        when(usersResource.get(anyString())).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+
+        String result = this.mvc.perform(get("/api/users").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(2, result.split("\n").length);
+    }
+
     @Test
     public void exceptionGetUserByIdByModerator() throws Exception {
         String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
@@ -144,6 +405,62 @@ public class ControllerTest extends BaseIntegrationTest {
                 .andDo(print());
     }
 
+    @Test
+    public void exceptionInGroupsCallGetUserByIdByModerator() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(realmResource.users().get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+        when(userResource.toRepresentation()).thenReturn(userRepresentation);
+        when(userResource.groups()).thenThrow(new RuntimeException("groups"));
+        this.mvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().is(500))
+                .andDo(print());
+        verify(userResource).toRepresentation();
+    }
+
+    @Test
+    public void openCircuitFailsFastWith503() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(realmResource.users().get(eq(id))).thenReturn(userResource);
+        keycloakCircuitBreaker.transitionToForcedOpenState();
+        this.mvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().is(503));
+        this.mvc.perform(get("/api/users/hello"))
+                .andExpect(status().isOk());
+        verify(userResource, never()).toRepresentation();
+    }
+
+    @Test
+    public void idempotentCallIsRetriedOnServerError() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(realmResource.users().get(eq(id))).thenReturn(userResource);
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+        when(userResource.toRepresentation())
+                .thenThrow(new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE))
+                .thenReturn(userRepresentation);
+        this.mvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().is(200));
+        verify(userResource, times(2)).toRepresentation();
+    }
+
+    @Test
+    @SneakyThrows
+    public void createIsNotRetried() {
+        when(keycloak.realm(ArgumentMatchers.anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.create(ArgumentMatchers.any(UserRepresentation.class))).thenReturn(Response.status(Response.Status.BAD_GATEWAY).build());
+        mvc.perform(requestWithContent(post("/api/users"), userRequest)).andExpect(status().is(502));
+        verify(usersResource, times(1)).create(any(UserRepresentation.class));
+    }
+
     @Test
     public void unsuccessful404GetUserByIdByModerator() throws Exception {
         String id = "";
@@ -0,0 +1,59 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.configuration.KeycloakJwtAuthenticationConverter;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeycloakJwtAuthenticationConverterTest {
+
+    private final KeycloakJwtAuthenticationConverter converter =
+            new KeycloakJwtAuthenticationConverter(100, Duration.ofHours(1));
+
+    @Test
+    public void realmRolesAreMappedToPrefixedAuthorities() {
+        AbstractAuthenticationToken authentication = converter.convert(jwt("1", Map.of("roles", List.of("MODERATOR"))));
+        assertEquals("gleb", authentication.getName());
+        assertEquals(List.of("ROLE_MODERATOR"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    public void authoritiesAreReusedAcrossTokens() {
+        GrantedAuthority first = converter.convert(jwt("1", Map.of("roles", List.of("MODERATOR"))))
+                .getAuthorities().iterator().next();
+        GrantedAuthority second = converter.convert(jwt("2", Map.of("roles", List.of("MODERATOR"))))
+                .getAuthorities().iterator().next();
+        assertSame(first, second);
+    }
+
+    @Test
+    public void missingRealmAccessGivesNoAuthorities() {
+        Jwt jwt = Jwt.withTokenValue("token-3")
+                .header("alg", "RS256")
+                .subject("gleb")
+                .expiresAt(Instant.now().plusSeconds(60))
+                .build();
+        assertTrue(converter.convert(jwt).getAuthorities().isEmpty());
+    }
+
+    private static Jwt jwt(String id, Map<String, Object> realmAccess) {
+        return Jwt.withTokenValue("token-" + id)
+                .header("alg", "RS256")
+                .jti(id)
+                .subject("gleb")
+                .expiresAt(Instant.now().plusSeconds(60))
+                .claim("realm_access", realmAccess)
+                .build();
+    }
+}
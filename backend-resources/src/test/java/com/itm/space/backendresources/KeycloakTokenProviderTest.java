@@ -0,0 +1,119 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.configuration.KeycloakTokenProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.token.TokenManager;
+import org.keycloak.representations.AccessTokenResponse;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KeycloakTokenProviderTest {
+    private final TokenManager tokenManager = mock(TokenManager.class);
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KeycloakTokenProvider tokenProvider = tokenProvider();
+
+    @Test
+    public void concurrentCallsOnColdStartShareOneGrant() throws Exception {
+        CountDownLatch granting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(tokenManager.grantToken()).thenAnswer(invocation -> {
+            granting.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return token("t1", 300);
+        });
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(tokenProvider::getAccessToken);
+        assertTrue(granting.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<String>> others = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(tokenProvider::getAccessToken))
+                .toList();
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("t1", first.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> other : others) {
+            assertEquals("t1", other.get(5, TimeUnit.SECONDS));
+        }
+        verify(tokenManager, times(1)).grantToken();
+    }
+
+    @Test
+    public void backgroundRefreshIsScheduledAheadOfExpiry() {
+        when(tokenManager.grantToken()).thenReturn(token("t1", 300));
+
+        runScheduledRefresh();
+
+        verify(scheduler).schedule(any(Runnable.class), eq(240L), eq(TimeUnit.SECONDS)); //300 с минус refreshAhead 60 с
+        assertEquals("t1", tokenProvider.getCachedAccessToken());
+    }
+
+    @Test
+    public void failedRefreshIsCountedAndRetriedAfterRetryDelay() {
+        when(tokenManager.grantToken()).thenThrow(new IllegalStateException("keycloak is down"));
+
+        runScheduledRefresh();
+
+        verify(scheduler).schedule(any(Runnable.class), eq(10L), eq(TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("keycloak.token.refresh.failures").counter().count());
+    }
+
+    @Test
+    public void expiredTokenBlocksCallerUntilFreshOne() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(tokenManager.grantToken())
+                .thenReturn(token("expired", 0))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return token("fresh", 300);
+                });
+        assertEquals("expired", tokenProvider.getAccessToken()); //истекает сразу после получения
+
+        CompletableFuture<String> caller = CompletableFuture.supplyAsync(tokenProvider::getAccessToken);
+        Thread.sleep(100);
+        assertFalse(caller.isDone());
+        release.countDown();
+
+        assertEquals("fresh", caller.get(5, TimeUnit.SECONDS));
+        verify(tokenManager, times(2)).grantToken();
+    }
+
+    private void runScheduledRefresh() {
+        tokenProvider.afterPropertiesSet();
+        ArgumentCaptor<Runnable> firstRefresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).execute(firstRefresh.capture());
+        firstRefresh.getValue().run();
+    }
+
+    private KeycloakTokenProvider tokenProvider() {
+        Keycloak tokenClient = mock(Keycloak.class);
+        when(tokenClient.tokenManager()).thenReturn(tokenManager);
+        return new KeycloakTokenProvider(tokenClient, Duration.ofSeconds(60), Duration.ofSeconds(10), meterRegistry, scheduler);
+    }
+
+    private static AccessTokenResponse token(String value, long expiresIn) {
+        AccessTokenResponse token = new AccessTokenResponse();
+        token.setToken(value);
+        token.setExpiresIn(expiresIn);
+        return token;
+    }
+}
@@ -0,0 +1,134 @@
+package com.itm.space.backendresources;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.mockUser;
+
+@SpringBootTest(properties = {"spring.main.web-application-type=reactive",
+        "keycloak.client.call-timeout=1s", "users.list.concurrency=1"})
+@AutoConfigureWebTestClient
+public class ReactiveUserControllerTest {
+    private static final String USER_ID = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+    private static final String ADMIN_PATH = "/auth/admin/realms/ITM/users/";
+    private static final String SLOW_SEARCH = "slow"; //каждый пользователь укладывается в call-timeout, вся страница - нет
+
+    private static final MockWebServer keycloak = new MockWebServer();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) throws IOException {
+        keycloak.setDispatcher(new KeycloakDispatcher());
+        keycloak.start();
+        registry.add("keycloak.auth-server-url", () -> keycloak.url("/auth").toString().replaceAll("/$", ""));
+    }
+
+    @AfterAll
+    static void shutdown() throws IOException {
+        keycloak.shutdown();
+    }
+
+    @Test
+    public void getUserByIdCombinesUserRolesAndGroups() {
+        webTestClient.mutateWith(mockUser("gleb").roles("MODERATOR"))
+                .get().uri("/api/users/{id}", USER_ID)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().cacheControl(CacheControl.maxAge(Duration.ofSeconds(5)).cachePrivate())
+                .expectBody()
+                .jsonPath("$.email").isEqualTo("test@mail.ru")
+                .jsonPath("$.roles[0]").isEqualTo("MODERATOR")
+                .jsonPath("$.groups[0]").isEqualTo("staff");
+    }
+
+    @Test
+    public void keycloakNotFoundIsPassedThrough() {
+        webTestClient.mutateWith(mockUser("gleb").roles("MODERATOR"))
+                .get().uri("/api/users/{id}", "00000000-0000-0000-0000-000000000000")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void slowPageTimesOutAsAWhole() {
+        webTestClient.mutateWith(mockUser("gleb").roles("MODERATOR"))
+                .get().uri("/api/users?search={search}", SLOW_SEARCH)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    public void helloReturnsUserName() {
+        webTestClient.mutateWith(mockUser("gleb").roles("MODERATOR"))
+                .get().uri("/api/users/hello")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("gleb");
+    }
+
+    @Test
+    public void userWithoutModeratorRoleIsForbidden() {
+        webTestClient.mutateWith(mockUser("gleb").roles("USER"))
+                .get().uri("/api/users/{id}", USER_ID)
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    private static class KeycloakDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            if (path.endsWith("/protocol/openid-connect/token")) {
+                return json("{\"access_token\":\"token\",\"expires_in\":300,\"token_type\":\"Bearer\"}");
+            }
+            if (!"Bearer token".equals(request.getHeader(HttpHeaders.AUTHORIZATION))) {
+                return new MockResponse().setResponseCode(401);
+            }
+            if (path.startsWith(ADMIN_PATH.replaceAll("/$", "?")) && path.contains("search=" + SLOW_SEARCH)) {
+                return json(IntStream.rangeClosed(1, 10).mapToObj(i -> "{\"id\":\"slow-" + i + "\"}")
+                        .collect(Collectors.joining(",", "[", "]")));
+            }
+            if (path.startsWith(ADMIN_PATH + "slow-")) {
+                return json(path.endsWith("/groups") ? "[]" : "{}").setBodyDelay(150, TimeUnit.MILLISECONDS);
+            }
+            if (path.equals(ADMIN_PATH + USER_ID)) {
+                return json("{\"id\":\"" + USER_ID + "\",\"username\":\"gleb\",\"email\":\"test@mail.ru\"}");
+            }
+            if (path.equals(ADMIN_PATH + USER_ID + "/role-mappings")) {
+                return json("{\"realmMappings\":[{\"name\":\"MODERATOR\"}]}");
+            }
+            if (path.equals(ADMIN_PATH + USER_ID + "/groups")) {
+                return json("[{\"name\":\"staff\"}]");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+
+        private static MockResponse json(String body) {
+            return new MockResponse()
+                    .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .setBody(body);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.configuration.CacheConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SingleFlightCacheTest {
+
+    private final Cache cache = new CacheConfiguration()
+            .cacheManager("maximumSize=100", List.of(CacheConfiguration.USERS_CACHE))
+            .getCache(CacheConfiguration.USERS_CACHE);
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("id", () -> {
+            loads.incrementAndGet();
+            loaderStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "user";
+        }));
+        assertEquals(true, loaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> cache.get("id", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+        assertEquals("user", first.get(5, TimeUnit.SECONDS));
+        assertEquals("user", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void evictDuringLoadWins() throws Exception {
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> load = CompletableFuture.supplyAsync(() -> cache.get("id", () -> {
+            loaderStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "stale";
+        }));
+        assertEquals(true, loaderStarted.await(5, TimeUnit.SECONDS));
+        cache.evict("id"); //пользователь изменился, пока шла загрузка
+        release.countDown();
+
+        assertEquals("stale", load.get(5, TimeUnit.SECONDS));
+        assertNull(cache.get("id"));
+    }
+
+    @Test
+    public void failedLoadIsNotCached() {
+        assertThrows(Cache.ValueRetrievalException.class, () -> cache.get("id", () -> {
+            throw new IllegalStateException("keycloak");
+        }));
+        assertEquals("user", cache.get("id", () -> "user"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.itm.space.backendresources;
+
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.MappingsRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@AutoConfigureObservability
+@TestPropertySource(properties = {"management.tracing.sampling.probability=0", "tracing.exporter=none"})
+@WithMockUser(username = "gleb", password = "gleb", authorities = "ROLE_MODERATOR")
+public class TracingTest extends BaseIntegrationTest {
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String GATEWAY_SPAN_ID = "00f067aa0ba902b7";
+
+    @MockBean
+    private Keycloak keycloak;
+
+    @Autowired
+    private SdkTracerProvider tracerProvider;
+
+    @Autowired
+    private CollectingSpanExporter spans;
+
+    @Test
+    public void keycloakCallsAndMappingAreChildSpansOfGatewayTrace() throws Exception {
+        String id = "3d40251d-829c-454e-b389-ec5e9c38a4cc";
+        RealmResource realmResource = mock(RealmResource.class);
+        UsersResource usersResource = mock(UsersResource.class);
+        UserResource userResource = mock(UserResource.class);
+        when(keycloak.realm(anyString())).thenReturn(realmResource);
+        when(realmResource.users()).thenReturn(usersResource);
+        when(usersResource.get(eq(id))).thenReturn(userResource);
+        when(userResource.toRepresentation()).thenReturn(new UserRepresentation());
+        when(userResource.roles()).thenReturn(mock(RoleMappingResource.class));
+        when(userResource.roles().getAll()).thenReturn(mock(MappingsRepresentation.class));
+
+        mvc.perform(get("/api/users/{id}", id).param("fields", "email,roles,groups")
+                        .header("traceparent", "00-" + TRACE_ID + "-" + GATEWAY_SPAN_ID + "-01")) //шлюз решил сохранить трассу
+                .andExpect(status().is(200));
+        tracerProvider.forceFlush().join(5, TimeUnit.SECONDS);
+
+        List<SpanData> trace = spans.finished().stream().filter(span -> span.getTraceId().equals(TRACE_ID)).toList();
+        Map<String, SpanData> byName = trace.stream()
+                .collect(Collectors.toMap(SpanData::getName, Function.identity(), (first, second) -> first));
+        Map<String, SpanData> byId = trace.stream().collect(Collectors.toMap(SpanData::getSpanId, Function.identity()));
+        SpanData server = trace.stream().filter(span -> span.getKind() == SpanKind.SERVER).findFirst().orElseThrow();
+        assertEquals(GATEWAY_SPAN_ID, server.getParentSpanId());
+        for (String child : List.of("keycloak toRepresentation", "keycloak roleMappings", "keycloak groups", "user-mapper")) {
+            assertTrue(byName.containsKey(child), child + " not in " + byName.keySet());
+            assertTrue(descendsFrom(byName.get(child), server.getSpanId(), byId), child); //между ними спаны Spring Security
+        }
+    }
+
+    @Test
+    public void unsampledRequestsAreNotExported() throws Exception {
+        mvc.perform(get("/api/users/hello")).andExpect(status().is(200));
+        tracerProvider.forceFlush().join(5, TimeUnit.SECONDS);
+
+        assertTrue(spans.finished().stream().noneMatch(span -> span.getName().contains("hello")));
+    }
+
+    private static boolean descendsFrom(SpanData span, String ancestorId, Map<String, SpanData> byId) {
+        for (SpanData parent = byId.get(span.getParentSpanId()); parent != null; parent = byId.get(parent.getParentSpanId())) {
+            if (parent.getSpanId().equals(ancestorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @TestConfiguration
+    static class CollectingSpanExporterConfiguration {
+        @Bean
+        CollectingSpanExporter collectingSpanExporter() {
+            return new CollectingSpanExporter();
+        }
+    }
+
+    static class CollectingSpanExporter implements SpanExporter {
+        private final List<SpanData> finished = new CopyOnWriteArrayList<>();
+
+        List<SpanData> finished() {
+            return finished;
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            finished.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.api.response.UserResponse;
+import com.itm.space.backendresources.service.KeycloakCallTemplate;
+import com.itm.space.backendresources.service.UserIndex;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Answers;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.ws.rs.NotFoundException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserIndexTest {
+    private static final String GLEB = "0b8a3fd0-4c4f-4d1b-9d36-5c3f4d1c2a11";
+    private static final String ANNA = "7f1c2d3e-4b5a-4c6d-8e9f-0a1b2c3d4e5f";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Keycloak keycloak = mock(Keycloak.class, Answers.RETURNS_DEEP_STUBS);
+    private final RealmResource realm = keycloak.realm("ITM");
+    private UserIndex userIndex;
+
+    @BeforeEach
+    public void setUp() {
+        RoleRepresentation moderator = new RoleRepresentation("MODERATOR", null, false);
+        GroupRepresentation backend = group("g1", "backend");
+        GroupRepresentation java = group("g2", "java");
+        backend.setSubGroups(List.of(java));
+        when(realm.roles().list()).thenReturn(List.of(moderator));
+        when(realm.roles().get("MODERATOR").getRoleUserMembers(0, 100)).thenReturn(Set.of(user(GLEB, "gleb", "Gleb")));
+        when(realm.groups().groups()).thenReturn(List.of(backend));
+        when(realm.groups().group("g1").members(0, 100)).thenReturn(List.of(user(GLEB, "gleb", "Gleb")));
+        when(realm.groups().group("g2").members(0, 100)).thenReturn(List.of(user(GLEB, "gleb", "Gleb")));
+        when(realm.users().list(0, 100)).thenReturn(List.of(user(GLEB, "gleb", "Gleb"), user(ANNA, "anna", "Anna")));
+        when(realm.getAdminEvents(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), anyString(), isNull(),
+                anyInt(), anyInt())).thenReturn(List.of());
+        when(realm.getEvents(any(), isNull(), isNull(), anyString(), isNull(), isNull(), anyInt(), anyInt()))
+                .thenReturn(List.of());
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("keycloak", keycloak);
+        KeycloakCallTemplate keycloakCalls = new KeycloakCallTemplate(meterRegistry, CircuitBreaker.ofDefaults("keycloak"),
+                Bulkhead.ofDefaults("keycloak"), Retry.of("keycloak", RetryConfig.custom().maxAttempts(1).build()),
+                beanFactory.getBeanProvider(Tracer.class));
+        userIndex = new UserIndex(beanFactory.getBeanProvider(Keycloak.class), keycloakCalls, meterRegistry);
+        ReflectionTestUtils.setField(userIndex, "enabled", true);
+        ReflectionTestUtils.setField(userIndex, "realm", "ITM");
+        ReflectionTestUtils.setField(userIndex, "pageSize", 100);
+        ReflectionTestUtils.setField(userIndex, "fullReloadInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(userIndex, "maxLag", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(userIndex, "eventOverlap", Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    public void shutdown() {
+        userIndex.destroy();
+    }
+
+    @Test
+    public void fullLoadServesUsersWithRolesAndGroups() {
+        assertNull(userIndex.findById(UUID.fromString(GLEB)));
+        userIndex.sync();
+
+        UserResponse gleb = userIndex.findById(UUID.fromString(GLEB));
+        assertEquals("Gleb", gleb.getFirstName());
+        assertEquals(List.of("MODERATOR"), gleb.getRoles());
+        assertEquals(List.of("backend", "java"), gleb.getGroups());
+        assertEquals(List.of(), userIndex.findById(UUID.fromString(ANNA)).getRoles());
+        assertEquals(List.of("Anna", "Gleb"), firstNames(userIndex.findUsers(null, 0, 10)));
+        assertEquals(List.of("Gleb"), firstNames(userIndex.findUsers("GLEB@mail", 0, 10)));
+        assertEquals(1.0, meterRegistry.get("users.index.reads").tag("result", "bypass").counter().count());
+        assertEquals(2.0, meterRegistry.get("users.index.size").gauge().value());
+    }
+
+    @Test
+    public void adminEventsUpdateAndRemoveUsers() {
+        userIndex.sync();
+        long now = System.currentTimeMillis();
+        when(realm.getAdminEvents(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), anyString(), isNull(),
+                anyInt(), anyInt())).thenReturn(List.of(
+                adminEvent(now, "UPDATE", "USER", "users/" + ANNA),
+                adminEvent(now - 1, "DELETE", "USER", "users/" + GLEB)));
+        UserResource anna = realm.users().get(ANNA);
+        when(anna.toRepresentation()).thenReturn(user(ANNA, "anna", "Anya"));
+        when(anna.roles().getAll().getRealmMappings()).thenReturn(List.of(new RoleRepresentation("MODERATOR", null, false)));
+        when(anna.groups()).thenReturn(List.of());
+        when(realm.users().get(GLEB).toRepresentation()).thenThrow(new NotFoundException());
+
+        userIndex.sync();
+
+        assertEquals("Anya", userIndex.findById(UUID.fromString(ANNA)).getFirstName());
+        assertEquals(List.of("MODERATOR"), userIndex.findById(UUID.fromString(ANNA)).getRoles());
+        assertNull(userIndex.findById(UUID.fromString(GLEB)));
+        assertEquals(1.0, meterRegistry.get("users.index.reads").tag("result", "miss").counter().count());
+        assertEquals(2, meterRegistry.get("users.index.event.lag").timer().count());
+    }
+
+    @Test
+    public void staleIndexIsBypassed() {
+        userIndex.sync();
+        assertTrue(userIndex.isServing());
+
+        ReflectionTestUtils.setField(userIndex, "lastSyncAt", System.currentTimeMillis() - 60_000);
+
+        assertFalse(userIndex.isServing());
+        assertNull(userIndex.findUsers(null, 0, 10));
+        assertTrue(meterRegistry.get("users.index.staleness").gauge().value() >= 60);
+    }
+
+    private static List<String> firstNames(List<UserResponse> users) {
+        return users.stream().map(UserResponse::getFirstName).toList();
+    }
+
+    private static UserRepresentation user(String id, String username, String firstName) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(username + "@mail.ru");
+        user.setFirstName(firstName);
+        return user;
+    }
+
+    private static GroupRepresentation group(String id, String name) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(id);
+        group.setName(name);
+        return group;
+    }
+
+    private static AdminEventRepresentation adminEvent(long time, String operation, String resourceType, String path) {
+        AdminEventRepresentation event = new AdminEventRepresentation();
+        event.setTime(time);
+        event.setOperationType(operation);
+        event.setResourceType(resourceType);
+        event.setResourcePath(path);
+        return event;
+    }
+}
@@ -0,0 +1,147 @@
+package com.itm.space.backendresources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.ProvisioningJobResponse;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
+import com.itm.space.backendresources.exception.BackendResourcesException;
+import com.itm.space.backendresources.service.UserProvisioningQueue;
+import com.itm.space.backendresources.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserProvisioningQueueTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().findModulesViaServiceLoader(true).build(); //как у Boot, с parameter names
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserService userService = mock(UserService.class);
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        when(userService.createUsers(anyList())).thenAnswer(invocation -> invocation.<List<UserRequest>>getArgument(0).stream()
+                .map(request -> request.getUsername().startsWith("taken")
+                        ? UserCreationResponse.failed(request.getUsername(), 409, "Conflict")
+                        : UserCreationResponse.created(request.getUsername(), "id-" + request.getUsername()))
+                .toList());
+    }
+
+    @Test
+    public void workersProvisionQueuedUsersInBatches() throws Exception {
+        UserProvisioningQueue queue = queue(10, "");
+        ProvisioningJobResponse gleb = queue.submit(userRequest("gleb"));
+        ProvisioningJobResponse taken = queue.submit(userRequest("taken"));
+        assertEquals(ProvisioningJobResponse.Status.QUEUED, queue.getJob(gleb.getId()).getStatus());
+
+        queue.onApplicationEvent(null);
+        ProvisioningJobResponse done = awaitDone(queue, gleb.getId());
+        queue.destroy();
+
+        assertEquals("id-gleb", done.getResult().getId());
+        assertEquals(409, awaitDone(queue, taken.getId()).getResult().getStatus());
+        verify(userService, times(1)).createUsers(anyList()); //обе задачи ушли одним пакетом
+        assertEquals(1.0, meterRegistry.get("users.provisioning.jobs").tag("outcome", "created").counter().count());
+        assertEquals(1.0, meterRegistry.get("users.provisioning.jobs").tag("outcome", "failed").counter().count());
+        assertEquals(2, meterRegistry.get("users.provisioning.queue.wait").timer().count());
+        assertEquals(0.0, meterRegistry.get("users.provisioning.queue.depth").gauge().value());
+    }
+
+    @Test
+    public void fullQueueRejectsAndUnknownJobIsNotFound() throws Exception {
+        UserProvisioningQueue queue = queue(1, "");
+        queue.submit(userRequest("gleb"));
+
+        BackendResourcesException full = assertThrows(BackendResourcesException.class, () -> queue.submit(userRequest("anna")));
+        BackendResourcesException unknown = assertThrows(BackendResourcesException.class, () -> queue.getJob(UUID.randomUUID()));
+        queue.destroy();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, full.getHttpStatus());
+        assertEquals(HttpStatus.NOT_FOUND, unknown.getHttpStatus());
+        assertEquals(1.0, meterRegistry.get("users.provisioning.jobs").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    public void unfinishedJobsAreRecoveredFromJournal() throws Exception {
+        String journal = tempDir.resolve("provisioning.journal").toString();
+        UserProvisioningQueue beforeRestart = queue(10, journal);
+        UUID gleb = beforeRestart.submit(userRequest("gleb")).getId();
+        UUID anna = beforeRestart.submit(userRequest("anna")).getId();
+        beforeRestart.destroy();
+
+        UserProvisioningQueue afterRestart = queue(10, journal);
+        assertEquals(ProvisioningJobResponse.Status.QUEUED, afterRestart.getJob(anna).getStatus());
+        afterRestart.onApplicationEvent(null);
+        assertEquals("id-gleb", awaitDone(afterRestart, gleb).getResult().getId());
+        assertEquals("id-anna", awaitDone(afterRestart, anna).getResult().getId());
+        afterRestart.destroy();
+
+        UserProvisioningQueue afterSecondRestart = queue(10, journal);
+        assertThrows(BackendResourcesException.class, () -> afterSecondRestart.getJob(gleb));
+        afterSecondRestart.destroy();
+    }
+
+    @Test
+    public void journalIsCompactedWhileJobsKeepComing() throws Exception {
+        Path journal = tempDir.resolve("data/provisioning.journal"); //каталога еще нет
+        UserProvisioningQueue queue = queue(10, journal.toString(), 4);
+        queue.onApplicationEvent(null);
+        for (int i = 0; i < 6; i++) { //по две строки на задачу - сжатие после каждой второй
+            UUID id = queue.submit(userRequest("user" + i)).getId();
+            awaitDone(queue, id);
+        }
+        queue.destroy();
+
+        List<String> lines = Files.readAllLines(journal);
+        assertEquals(List.of(), lines);
+    }
+
+    private UserProvisioningQueue queue(int capacity, String journalFile) throws IOException {
+        return queue(capacity, journalFile, 10_000);
+    }
+
+    private UserProvisioningQueue queue(int capacity, String journalFile, int journalCompactLines) throws IOException {
+        UserProvisioningQueue queue = new UserProvisioningQueue(userService, objectMapper, meterRegistry,
+                capacity, Duration.ofMinutes(5), journalFile, false, journalCompactLines);
+        ReflectionTestUtils.setField(queue, "workerCount", 1);
+        ReflectionTestUtils.setField(queue, "maxBatchSize", 10);
+        ReflectionTestUtils.setField(queue, "shutdownTimeout", Duration.ofSeconds(5));
+        return queue;
+    }
+
+    private static ProvisioningJobResponse awaitDone(UserProvisioningQueue queue, UUID id) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        ProvisioningJobResponse job = queue.getJob(id);
+        while (job.getStatus() != ProvisioningJobResponse.Status.DONE && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = queue.getJob(id);
+        }
+        assertTrue(job.getStatus() == ProvisioningJobResponse.Status.DONE, "job " + id + " is " + job.getStatus());
+        return job;
+    }
+
+    private static UserRequest userRequest(String username) {
+        return new UserRequest(username, username + "@mail.ru", "password", "First", "Last");
+    }
+}
@@ -0,0 +1,84 @@
+package com.itm.space.backendresources;
+
+import com.itm.space.backendresources.api.request.UserRequest;
+import com.itm.space.backendresources.api.response.UserCreationResponse;
+import com.itm.space.backendresources.mapper.UserMapper;
+import com.itm.space.backendresources.service.KeycloakCallTemplate;
+import com.itm.space.backendresources.service.UserIndex;
+import com.itm.space.backendresources.service.UserServiceImpl;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class UserServiceImplTest {
+    private final AsyncTaskExecutor keycloakExecutor = mock(AsyncTaskExecutor.class);
+    private final UserServiceImpl userService = new UserServiceImpl(mock(Keycloak.class),
+            new KeycloakCallTemplate(new SimpleMeterRegistry(), CircuitBreaker.ofDefaults("keycloak"),
+                    Bulkhead.ofDefaults("keycloak"), Retry.ofDefaults("keycloak"), noTracer()),
+            mock(UserMapper.class), keycloakExecutor, new ConcurrentMapCacheManager(),
+            Validation.buildDefaultValidatorFactory().getValidator(), mock(UserIndex.class), noTracer());
+
+    @Test
+    public void saturatedExecutorAndNullItemFailOnlyTheirItems() {
+        doThrow(new TaskRejectedException("queue is full")).when(keycloakExecutor).execute(any(Runnable.class));
+        batchSettings(Duration.ofSeconds(5));
+
+        List<UserCreationResponse> results = userService.createUsers(Arrays.asList(userRequest("gleb"), null));
+
+        assertEquals(503, results.get(0).getStatus());
+        assertEquals("gleb", results.get(0).getUsername());
+        assertEquals(400, results.get(1).getStatus());
+        assertNull(results.get(1).getUsername());
+    }
+
+    @Test
+    public void unfinishedCreatesTimeOutAtBatchDeadline() {
+        batchSettings(Duration.ofMillis(50)); //пул принимает задачи, но не выполняет их
+
+        List<UserCreationResponse> results = userService.createUsers(List.of(userRequest("gleb")));
+
+        ArgumentCaptor<Runnable> hanging = ArgumentCaptor.forClass(Runnable.class);
+        verify(keycloakExecutor).execute(hanging.capture());
+        assertEquals(504, results.get(0).getStatus());
+        assertTrue(((Future<?>) hanging.getValue()).isCancelled()); //отменена сама задача в пуле, а не производная
+    }
+
+    private void batchSettings(Duration timeout) {
+        ReflectionTestUtils.setField(userService, "batchConcurrency", 8);
+        ReflectionTestUtils.setField(userService, "batchMaxSize", 5000);
+        ReflectionTestUtils.setField(userService, "batchTimeout", timeout);
+    }
+
+    private static UserRequest userRequest(String username) {
+        return new UserRequest(username, username + "@mail.ru", "password", "Gleb", "Emelyanov");
+    }
+
+    private static ObjectProvider<Tracer> noTracer() {
+        return new DefaultListableBeanFactory().getBeanProvider(Tracer.class);
+    }
+}